@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki.benchmarks;
+
+import fi.evident.lokki.FixedLocaleProvider;
+import fi.evident.lokki.MessagesProvider;
+import fi.evident.lokki.ThreadLocalLocaleProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Messages-objects shared by multiple threads, using a fixed locale
+ * and a locale stored in a thread local.
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private PublicMessages fixedLocale;
+
+    private ThreadLocalLocaleProvider threadLocalProvider;
+
+    private PublicMessages threadLocalLocale;
+
+    @Setup
+    public void setup() {
+        fixedLocale = new MessagesProvider(new FixedLocaleProvider(Locale.ENGLISH)).create(PublicMessages.class);
+
+        // The fallback is never used, since each thread sets its own locale
+        threadLocalProvider = new ThreadLocalLocaleProvider(new FixedLocaleProvider(Locale.ROOT));
+        threadLocalLocale = new MessagesProvider(threadLocalProvider).create(PublicMessages.class);
+    }
+
+    /**
+     * Sets the locale of each benchmark thread, so that the thread-local value is read
+     * instead of the fallback. Thread-scoped state is set up by the thread that uses it.
+     */
+    @State(Scope.Thread)
+    public static class ThreadLocale {
+
+        @Setup
+        public void setLocale(ContentionBenchmark benchmark) {
+            benchmark.threadLocalProvider.setLocale(Locale.ENGLISH);
+        }
+    }
+
+    @Benchmark
+    public String fixedLocaleNoArgs() {
+        return fixedLocale.hello();
+    }
+
+    @Benchmark
+    public String fixedLocaleMultipleArgs() {
+        return fixedLocale.greet("world", "lokki", 3);
+    }
+
+    @Benchmark
+    public String threadLocalLocaleNoArgs(ThreadLocale threadLocale) {
+        return threadLocalLocale.hello();
+    }
+
+    @Benchmark
+    public String threadLocalLocaleMultipleArgs(ThreadLocale threadLocale) {
+        return threadLocalLocale.greet("world", "lokki", 3);
+    }
+}
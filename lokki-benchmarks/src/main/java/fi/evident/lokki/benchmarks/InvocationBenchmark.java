@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki.benchmarks;
+
+import fi.evident.lokki.MessagesProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calls to Messages-objects implemented by generated classes and by proxies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvocationBenchmark {
+
+    private PublicMessages generated;
+
+    private ProxiedMessages proxied;
+
+    @Setup
+    public void setup() {
+        MessagesProvider provider = MessagesProvider.forLocale(Locale.ENGLISH);
+        generated = provider.create(PublicMessages.class);
+        proxied = provider.create(ProxiedMessages.class);
+    }
+
+    @Benchmark
+    public String generatedNoArgs() {
+        return generated.hello();
+    }
+
+    @Benchmark
+    public String generatedMultipleArgs() {
+        return generated.greet("world", "lokki", 3);
+    }
+
+    @Benchmark
+    public String proxiedNoArgs() {
+        return proxied.hello();
+    }
+
+    @Benchmark
+    public String proxiedMultipleArgs() {
+        return proxied.greet("world", "lokki", 3);
+    }
+}
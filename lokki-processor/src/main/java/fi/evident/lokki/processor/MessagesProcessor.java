@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor which generates implementations for interfaces extending
+ * {@code fi.evident.lokki.Messages}. MessagesProvider will use the generated
+ * implementations instead of creating proxies at runtime.
+ * <p>
+ * The processor also verifies the methods of the interfaces, so that invalid
+ * definitions are reported at compile time instead of at runtime.
+ */
+@SupportedAnnotationTypes("*")
+public final class MessagesProcessor extends AbstractProcessor {
+
+    private static final String MESSAGES_CLASS = "fi.evident.lokki.Messages";
+    private static final String KEY_ANNOTATION = "fi.evident.lokki.Messages.Key";
+    private static final String DEFAULT_MESSAGE_ANNOTATION = "fi.evident.lokki.Messages.DefaultMessage";
+
+    /** Must match the naming scheme of {@code fi.evident.lokki.PrecompiledMessages}. */
+    private static final String CLASS_NAME_SUFFIX = "_Lokki";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement messagesType = processingEnv.getElementUtils().getTypeElement(MESSAGES_CLASS);
+        if (messagesType == null)
+            return false;
+
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements()))
+            processType(type, messagesType);
+
+        return false;
+    }
+
+    private void processType(TypeElement type, TypeElement messagesType) {
+        if (type.getKind() == ElementKind.INTERFACE && !type.equals(messagesType) && isMessagesInterface(type, messagesType))
+            processMessagesInterface(type);
+
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements()))
+            processType(nested, messagesType);
+    }
+
+    private boolean isMessagesInterface(TypeElement type, TypeElement messagesType) {
+        Types types = processingEnv.getTypeUtils();
+        return types.isSubtype(types.erasure(type.asType()), messagesType.asType());
+    }
+
+    private void processMessagesInterface(TypeElement type) {
+        List<ExecutableElement> methods = messageMethodsOf(type);
+
+        boolean valid = true;
+        for (ExecutableElement method : methods)
+            valid &= verifyMethod(type, method);
+
+        if (valid && canImplement(type, methods))
+            generateImplementation(type, methods);
+    }
+
+    /**
+     * Returns the abstract methods of given interface, including the inherited ones.
+     * If a method is overridden, only the most specific one is returned.
+     */
+    private List<ExecutableElement> messageMethodsOf(TypeElement type) {
+        Elements elements = processingEnv.getElementUtils();
+        Types types = processingEnv.getTypeUtils();
+
+        Map<String, ExecutableElement> methodsBySignature = new LinkedHashMap<String, ExecutableElement>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE || !method.getModifiers().contains(Modifier.ABSTRACT))
+                continue;
+
+            String signature = signature(method);
+            ExecutableElement existing = methodsBySignature.get(signature);
+            if (existing == null || types.isSubtype(method.getEnclosingElement().asType(), types.erasure(existing.getEnclosingElement().asType())))
+                methodsBySignature.put(signature, method);
+        }
+
+        return new ArrayList<ExecutableElement>(methodsBySignature.values());
+    }
+
+    private String signature(ExecutableElement method) {
+        Types types = processingEnv.getTypeUtils();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(method.getSimpleName()).append('(');
+        for (VariableElement parameter : method.getParameters())
+            sb.append(types.erasure(parameter.asType())).append(';');
+        sb.append(')');
+        return sb.toString();
+    }
+
+    private boolean verifyMethod(TypeElement type, ExecutableElement method) {
+        TypeMirror stringType = processingEnv.getElementUtils().getTypeElement("java.lang.String").asType();
+
+        if (processingEnv.getTypeUtils().isSameType(method.getReturnType(), stringType))
+            return true;
+
+        if (isAppendingMethod(method)) {
+            if (isStringBuilder(lastParameterType(method)) || declaresIOException(method))
+                return true;
+
+            error(type, method, "invalid method definition: methods writing to an Appendable must declare IOException");
+            return false;
+        }
+
+        error(type, method, "invalid method definition: Messages-methods must return String");
+        return false;
+    }
+
+    /**
+     * Returns true if given method writes the message into an Appendable passed as its last parameter.
+     */
+    private boolean isAppendingMethod(ExecutableElement method) {
+        if (method.getReturnType().getKind() != TypeKind.VOID || method.getParameters().isEmpty())
+            return false;
+
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror appendableType = processingEnv.getElementUtils().getTypeElement("java.lang.Appendable").asType();
+        return types.isAssignable(types.erasure(lastParameterType(method)), appendableType);
+    }
+
+    private boolean isStringBuilder(TypeMirror type) {
+        TypeMirror stringBuilderType = processingEnv.getElementUtils().getTypeElement("java.lang.StringBuilder").asType();
+        return processingEnv.getTypeUtils().isSameType(type, stringBuilderType);
+    }
+
+    private boolean declaresIOException(ExecutableElement method) {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror ioExceptionType = processingEnv.getElementUtils().getTypeElement("java.io.IOException").asType();
+
+        for (TypeMirror thrownType : method.getThrownTypes())
+            if (types.isSubtype(ioExceptionType, thrownType))
+                return true;
+
+        return false;
+    }
+
+    private static TypeMirror lastParameterType(ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        return parameters.get(parameters.size() - 1).asType();
+    }
+
+    /**
+     * Returns true if we can generate source code for the implementation. We don't try to handle
+     * generic interfaces or methods, nor interfaces which are not visible from their package.
+     * Those interfaces will be implemented at runtime.
+     */
+    private static boolean canImplement(TypeElement type, List<ExecutableElement> methods) {
+        if (!type.getTypeParameters().isEmpty())
+            return false;
+
+        for (ExecutableElement method : methods)
+            if (!method.getTypeParameters().isEmpty())
+                return false;
+
+        for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement())
+            if (e.getModifiers().contains(Modifier.PRIVATE))
+                return false;
+
+        return true;
+    }
+
+    private void generateImplementation(TypeElement type, List<ExecutableElement> methods) {
+        Elements elements = processingEnv.getElementUtils();
+
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(type).toString();
+        String className = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('$', '_') + CLASS_NAME_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+            Writer out = file.openWriter();
+            try {
+                writeImplementation(out, packageName, className, type, methods);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "failed to write " + qualifiedName + ": " + e, type);
+        }
+
+        generateReflectionConfig(type, qualifiedName);
+    }
+
+    /**
+     * Writes a native-image reflection configuration for the generated class, since
+     * MessagesProvider finds and instantiates the class reflectively.
+     */
+    private void generateReflectionConfig(TypeElement type, String qualifiedName) {
+        String path = "META-INF/native-image/fi.evident.lokki/" + qualifiedName + "/reflect-config.json";
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", path, type);
+            Writer out = file.openWriter();
+            try {
+                out.write("[\n");
+                out.write("  {\n");
+                out.write("    \"name\": \"" + qualifiedName + "\",\n");
+                out.write("    \"methods\": [ { \"name\": \"<init>\", \"parameterTypes\": [ \"fi.evident.lokki.MessageBinder\" ] } ]\n");
+                out.write("  }\n");
+                out.write("]\n");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "failed to write " + path + ": " + e, type);
+        }
+    }
+
+    private void writeImplementation(Writer out, String packageName, String className,
+                                     TypeElement type, List<ExecutableElement> methods) throws IOException {
+        out.write("// Generated by lokki-processor. Do not edit.\n");
+        if (!packageName.isEmpty())
+            out.write("package " + packageName + ";\n");
+        out.write("\n");
+        out.write("public final class " + className + " implements " + type.getQualifiedName() + " {\n");
+
+        for (int i = 0; i < methods.size(); i++)
+            out.write("\n    private final fi.evident.lokki.BoundMessage message" + i + ";");
+        out.write("\n\n");
+
+        out.write("    public " + className + "(fi.evident.lokki.MessageBinder binder) {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            out.write("        this.message" + i + " = binder.bind(");
+            out.write(stringLiteral(resolveKey(method)) + ", ");
+            out.write(stringLiteral(annotationValue(method, DEFAULT_MESSAGE_ANNOTATION)) + ", ");
+            out.write(argumentCount(method) + ");\n");
+        }
+        out.write("    }\n");
+
+        for (int i = 0; i < methods.size(); i++)
+            writeMethod(out, i, methods.get(i), isAppendingMethod(methods.get(i)));
+
+        out.write("}\n");
+    }
+
+    private int argumentCount(ExecutableElement method) {
+        int parameterCount = method.getParameters().size();
+        return isAppendingMethod(method) ? parameterCount - 1 : parameterCount;
+    }
+
+    private static void writeMethod(Writer out, int index, ExecutableElement method, boolean appending) throws IOException {
+        List<? extends VariableElement> parameters = method.getParameters();
+        int argumentCount = appending ? parameters.size() - 1 : parameters.size();
+
+        out.write("\n    @Override\n");
+        out.write("    public " + method.getReturnType() + " " + method.getSimpleName() + "(");
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i != 0) out.write(", ");
+            boolean varArgs = method.isVarArgs() && i == parameters.size() - 1;
+            out.write(parameterType(parameters.get(i).asType(), varArgs) + " " + parameters.get(i).getSimpleName());
+        }
+        out.write(")");
+
+        List<? extends TypeMirror> thrownTypes = method.getThrownTypes();
+        for (int i = 0; i < thrownTypes.size(); i++)
+            out.write((i == 0 ? " throws " : ", ") + thrownTypes.get(i));
+
+        out.write(" {\n");
+        if (appending)
+            out.write("        this.message" + index + ".formatTo(" + parameters.get(argumentCount).getSimpleName());
+        else
+            out.write("        return this.message" + index + ".format(");
+
+        if (argumentCount != 0) {
+            if (appending) out.write(", ");
+            out.write("new java.lang.Object[] { ");
+            for (int i = 0; i < argumentCount; i++) {
+                if (i != 0) out.write(", ");
+                out.write(parameters.get(i).getSimpleName().toString());
+            }
+            out.write(" }");
+        }
+        out.write(");\n");
+        out.write("    }\n");
+    }
+
+    private static String parameterType(TypeMirror type, boolean varArgs) {
+        if (varArgs && type.getKind() == TypeKind.ARRAY)
+            return ((ArrayType) type).getComponentType() + "...";
+        else
+            return type.toString();
+    }
+
+    private static String resolveKey(ExecutableElement method) {
+        String key = annotationValue(method, KEY_ANNOTATION);
+        return (key != null) ? key : method.getSimpleName().toString();
+    }
+
+    private static String annotationValue(ExecutableElement method, String annotationName) {
+        for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName))
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet())
+                    if (entry.getKey().getSimpleName().contentEquals("value"))
+                        return (String) entry.getValue().getValue();
+        }
+        return null;
+    }
+
+    private static String stringLiteral(String value) {
+        if (value == null)
+            return "null";
+
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (ch < 0x20 || ch > 0x7e)
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    else
+                        sb.append(ch);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    private void error(TypeElement type, ExecutableElement method, String message) {
+        // Report inherited methods on the interface being processed, since the method might not be in this compilation
+        Element element = (method.getEnclosingElement().equals(type)) ? method : type;
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message + ": " + method, element);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki.processor;
+
+import fi.evident.lokki.MessagesProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MessagesProcessorTest {
+
+    private File outputDirectory;
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+    @Before
+    public void createOutputDirectory() throws IOException {
+        outputDirectory = File.createTempFile("lokki-processor", "");
+        assertTrue(outputDirectory.delete());
+        assertTrue(outputDirectory.mkdir());
+    }
+
+    @After
+    public void deleteOutputDirectory() {
+        delete(outputDirectory);
+    }
+
+    @Test
+    public void implementationIsGeneratedForMessagesInterface() throws Exception {
+        boolean success = compile(source("test.Greetings",
+            "package test;",
+            "import fi.evident.lokki.Messages;",
+            "public interface Greetings extends Messages {",
+            "    @DefaultMessage(\"Good morning!\") String goodMorning();",
+            "    @Key(\"hello\") @DefaultMessage(\"Hello, {0}!\") String greet(String target);",
+            "}"));
+
+        assertThat(diagnostics.getDiagnostics().toString(), success, is(true));
+
+        ClassLoader loader = new URLClassLoader(new URL[] { outputDirectory.toURI().toURL() }, getClass().getClassLoader());
+        Class<?> messagesClass = loader.loadClass("test.Greetings");
+        Object messages = MessagesProvider.forLocale(Locale.ENGLISH).create(messagesClass.asSubclass(fi.evident.lokki.Messages.class));
+
+        assertThat(messages.getClass().getName(), is("test.Greetings_Lokki"));
+        assertThat((String) messagesClass.getMethod("goodMorning").invoke(messages), is("Good morning!"));
+        assertThat((String) messagesClass.getMethod("greet", String.class).invoke(messages, "world"), is("Hello, world!"));
+    }
+
+    @Test
+    public void reflectionConfigurationIsGeneratedForNativeImages() throws IOException {
+        boolean success = compile(source("test.Greetings",
+            "package test;",
+            "import fi.evident.lokki.Messages;",
+            "public interface Greetings extends Messages {",
+            "    String hello();",
+            "}"));
+
+        assertThat(diagnostics.getDiagnostics().toString(), success, is(true));
+
+        File config = new File(outputDirectory, "META-INF/native-image/fi.evident.lokki/test.Greetings_Lokki/reflect-config.json");
+        String contents = read(config);
+        assertTrue(contents, contents.contains("\"name\": \"test.Greetings_Lokki\""));
+        assertTrue(contents, contents.contains("\"fi.evident.lokki.MessageBinder\""));
+    }
+
+    @Test
+    public void nestedAndInheritedInterfacesAreSupported() {
+        boolean success = compile(source("test.Outer",
+            "package test;",
+            "import fi.evident.lokki.Messages;",
+            "public class Outer {",
+            "    interface Parent extends Messages { String foo(); String bar(int x, String... rest); }",
+            "    interface Child extends Parent { @Override @DefaultMessage(\"\\\"quoted\\\"\") String foo(); }",
+            "}"));
+
+        assertThat(diagnostics.getDiagnostics().toString(), success, is(true));
+        assertTrue(new File(outputDirectory, "test/Outer_Parent_Lokki.class").isFile());
+        assertTrue(new File(outputDirectory, "test/Outer_Child_Lokki.class").isFile());
+    }
+
+    @Test
+    public void methodsNotReturningStringAreRejected() {
+        boolean success = compile(source("test.Invalid",
+            "package test;",
+            "import fi.evident.lokki.Messages;",
+            "public interface Invalid extends Messages {",
+            "    java.util.List<String> foo();",
+            "}"));
+
+        assertThat(success, is(false));
+        assertThat(diagnostics.getDiagnostics().get(0).getMessage(Locale.ROOT).contains("must return String"), is(true));
+    }
+
+    @Test
+    public void appendingMethodsAreImplemented() throws Exception {
+        boolean success = compile(source("test.Appending",
+            "package test;",
+            "import fi.evident.lokki.Messages;",
+            "public interface Appending extends Messages {",
+            "    @DefaultMessage(\"Hello, {0}!\") void greet(String target, StringBuilder out);",
+            "    @DefaultMessage(\"!\") void bang(java.io.Writer out) throws java.io.IOException;",
+            "}"));
+
+        assertThat(diagnostics.getDiagnostics().toString(), success, is(true));
+
+        ClassLoader loader = new URLClassLoader(new URL[] { outputDirectory.toURI().toURL() }, getClass().getClassLoader());
+        Class<?> messagesClass = loader.loadClass("test.Appending");
+        Object messages = MessagesProvider.forLocale(Locale.ENGLISH).create(messagesClass.asSubclass(fi.evident.lokki.Messages.class));
+
+        StringBuilder sb = new StringBuilder();
+        messagesClass.getMethod("greet", String.class, StringBuilder.class).invoke(messages, "world", sb);
+        assertThat(sb.toString(), is("Hello, world!"));
+
+        StringWriter writer = new StringWriter();
+        messagesClass.getMethod("bang", Writer.class).invoke(messages, writer);
+        assertThat(writer.toString(), is("!"));
+    }
+
+    @Test
+    public void appendingToArbitraryAppendableRequiresIOException() {
+        boolean success = compile(source("test.Invalid",
+            "package test;",
+            "import fi.evident.lokki.Messages;",
+            "public interface Invalid extends Messages {",
+            "    void foo(Appendable out);",
+            "}"));
+
+        assertThat(success, is(false));
+        assertThat(diagnostics.getDiagnostics().get(0).getMessage(Locale.ROOT).contains("must declare IOException"), is(true));
+    }
+
+    @Test
+    public void invalidInheritedMethodsAreRejected() {
+        boolean success = compile(
+            source("test.Parent",
+                "package test;",
+                "public interface Parent extends fi.evident.lokki.Messages { int foo(); }"),
+            source("test.Child",
+                "package test;",
+                "public interface Child extends Parent { }"));
+
+        assertThat(success, is(false));
+    }
+
+    private boolean compile(JavaFileObject... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> options = Arrays.asList(
+            "-classpath", System.getProperty("java.class.path"),
+            "-d", outputDirectory.getPath());
+
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(sources));
+        task.setProcessors(Arrays.asList(new MessagesProcessor()));
+        return task.call();
+    }
+
+    private static JavaFileObject source(String className, String... lines) {
+        final StringBuilder sb = new StringBuilder();
+        for (String line : lines)
+            sb.append(line).append('\n');
+
+        URI uri = URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return sb;
+            }
+        };
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private static String read(File file) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[1024];
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                sb.append(buffer, 0, n);
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * A MessageSource which loads all messages of a locale at once in the background, for
+ * example from a local database, so that looking up a message never blocks.
+ * <p>
+ * When a locale is first used, its messages are loaded asynchronously using the executor
+ * and lookups return null until the load completes, which makes Messages-objects fall back
+ * to their default messages. Use {@link #prefetch(Locale)} to load locales in advance, or
+ * {@link MessagesProvider#createAsync(Class, ExecutorService)} to get Messages-objects only
+ * when the messages of the current locale have been loaded.
+ * <p>
+ * Messages that are older than the maximum age, or explicitly {@link #refresh refreshed},
+ * are still served while they are reloaded in the background. If a load fails, lookups keep
+ * serving the old messages, or the default messages if there are none, for another period
+ * before trying again. Lookups never fail because the executor rejects a load either.
+ */
+public final class AsyncMessageSource implements BatchMessageSource {
+
+    /**
+     * Loads the messages of a locale. Called from the threads of the executor.
+     */
+    public interface Loader {
+
+        /**
+         * Returns all messages of given locale, including the messages that the locale
+         * inherits from more general locales.
+         */
+        @Nonnull
+        Map<String, String> loadMessages(@Nonnull Locale locale) throws Exception;
+    }
+
+    @Nonnull
+    private final Loader loader;
+
+    @Nonnull
+    private final LocaleProvider localeProvider;
+
+    @Nonnull
+    private final Executor executor;
+
+    private final long maxAgeNanos;
+
+    @Nonnull
+    private final ConcurrentMap<Locale, Snapshot> snapshotsByLocale = new ConcurrentHashMap<Locale, Snapshot>();
+
+    @Nonnull
+    private final ConcurrentMap<Locale, Load> loadsByLocale = new ConcurrentHashMap<Locale, Load>();
+
+    /**
+     * @param maxAge time after which loaded messages are reloaded in the background
+     */
+    public AsyncMessageSource(@Nonnull Loader loader, @Nonnull LocaleProvider localeProvider, @Nonnull Executor executor,
+                              long maxAge, @Nonnull TimeUnit unit) {
+        if (maxAge <= 0) throw new IllegalArgumentException("invalid maxAge: " + maxAge);
+
+        this.loader = requireNonNull(loader);
+        this.localeProvider = requireNonNull(localeProvider);
+        this.executor = requireNonNull(executor);
+        this.maxAgeNanos = unit.toNanos(maxAge);
+    }
+
+    @Nullable
+    @Override
+    public String getMessage(@Nonnull String key) {
+        Map<String, String> messages = currentMessages(localeProvider.getLocale());
+        return (messages != null) ? messages.get(key) : null;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, String> getMessages(@Nonnull Collection<String> keys) {
+        Map<String, String> messages = currentMessages(localeProvider.getLocale());
+        if (messages == null)
+            return Collections.emptyMap();
+
+        Map<String, String> result = new HashMap<String, String>(keys.size() * 2);
+        for (String key : keys) {
+            String message = messages.get(key);
+            if (message != null)
+                result.put(key, message);
+        }
+        return result;
+    }
+
+    /**
+     * Starts loading the messages of given locale, unless they have already been loaded and
+     * are not older than the maximum age. The returned future completes when the messages
+     * have been loaded, or fails with the exception thrown by the loader. The load is shared
+     * with other callers, so it can't be cancelled through the future.
+     */
+    @Nonnull
+    public Future<Void> prefetch(@Nonnull Locale locale) {
+        return new LoadView(startPrefetch(locale));
+    }
+
+    /**
+     * Returns the locale that lookups in the calling thread would use.
+     */
+    @Nonnull
+    Locale getLocale() {
+        return localeProvider.getLocale();
+    }
+
+    /**
+     * Like {@link #prefetch(Locale)}, but returns a load that can notify of its completion.
+     */
+    @Nonnull
+    Load startPrefetch(@Nonnull Locale locale) {
+        Snapshot snapshot = snapshotsByLocale.get(locale);
+        if (snapshot != null && snapshot.messages != null && isFresh(snapshot)) {
+            Load done = new Load(locale);
+            done.set(null);
+            return done;
+        }
+
+        return startRefresh(locale);
+    }
+
+    /**
+     * Starts reloading the messages of given locale, unless they are already being loaded.
+     * The current messages are served until the load completes. The returned future completes
+     * when the messages have been loaded, or fails with the exception thrown by the loader.
+     * The load is shared with other callers, so it can't be cancelled through the future.
+     */
+    @Nonnull
+    public Future<Void> refresh(@Nonnull Locale locale) {
+        return new LoadView(startRefresh(locale));
+    }
+
+    @Nonnull
+    private Load startRefresh(@Nonnull Locale locale) {
+        Load load;
+        while (true) {
+            Load existing = loadsByLocale.get(locale);
+            if (existing != null) {
+                if (!existing.isCancelled() && !existing.isAbandoned())
+                    return existing;
+
+                // The load was cancelled or dropped by the executor, so replace it with a new one
+                loadsByLocale.remove(locale, existing);
+                existing.cancel(false);
+            }
+
+            load = new Load(locale);
+            if (loadsByLocale.putIfAbsent(locale, load) == null)
+                break;
+        }
+
+        try {
+            executor.execute(load);
+        } catch (RejectedExecutionException e) {
+            loadsByLocale.remove(locale, load);
+            throw e;
+        }
+        return load;
+    }
+
+    private void loadMessages(@Nonnull Locale locale) throws Exception {
+        try {
+            Map<String, String> messages = loader.loadMessages(locale);
+            snapshotsByLocale.put(locale, new Snapshot(new HashMap<String, String>(messages)));
+        } catch (Exception e) {
+            // Keep serving the old messages, or none at all, until the next period
+            Snapshot old = snapshotsByLocale.get(locale);
+            snapshotsByLocale.put(locale, new Snapshot((old != null) ? old.messages : null));
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the messages of given locale have been loaded.
+     */
+    public boolean isLoaded(@Nonnull Locale locale) {
+        Snapshot snapshot = snapshotsByLocale.get(locale);
+        return snapshot != null && snapshot.messages != null;
+    }
+
+    /**
+     * Returns the loaded messages of given locale, or null if they are not loaded yet.
+     * Starts loading the messages if they are missing or older than the maximum age.
+     */
+    @Nullable
+    private Map<String, String> currentMessages(@Nonnull Locale locale) {
+        Snapshot snapshot = snapshotsByLocale.get(locale);
+
+        if (!isFresh(snapshot)) {
+            try {
+                startRefresh(locale);
+            } catch (RejectedExecutionException e) {
+                // Serve what there is, and try again on the next lookup
+            }
+        }
+
+        return (snapshot != null) ? snapshot.messages : null;
+    }
+
+    private boolean isFresh(@Nullable Snapshot snapshot) {
+        return snapshot != null && System.nanoTime() - snapshot.loadTime <= maxAgeNanos;
+    }
+
+    /**
+     * Load of the messages of a locale, which runs the registered callbacks when it completes.
+     * The load is removed from the loads in progress as soon as it completes, or is cancelled.
+     */
+    final class Load extends FutureTask<Void> {
+
+        @Nonnull
+        private final Locale locale;
+
+        private final long creationTime = System.nanoTime();
+
+        private volatile boolean started = false;
+
+        /** Callbacks to run on completion, or null once they have been run */
+        @Nullable
+        private List<Runnable> callbacks = new ArrayList<Runnable>();
+
+        Load(@Nonnull final Locale locale) {
+            super(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    loadMessages(locale);
+                    return null;
+                }
+            });
+            this.locale = locale;
+        }
+
+        /**
+         * Returns true if the executor has not run this load within the maximum age, which
+         * happens if it discards tasks without running them.
+         */
+        boolean isAbandoned() {
+            return !started && !isDone() && System.nanoTime() - creationTime > maxAgeNanos;
+        }
+
+        /**
+         * Runs given callback when this load completes, or right away in the calling thread
+         * if it has already completed. The callback must not throw.
+         */
+        void whenDone(@Nonnull Runnable callback) {
+            synchronized (this) {
+                if (callbacks != null) {
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            callback.run();
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            super.run();
+        }
+
+        // Remove the load before waking up the waiters, so that they can start a new one
+
+        @Override
+        protected void set(Void v) {
+            loadsByLocale.remove(locale, this);
+            super.set(v);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            loadsByLocale.remove(locale, this);
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            loadsByLocale.remove(locale, this);
+
+            List<Runnable> callbacks;
+            synchronized (this) {
+                callbacks = this.callbacks;
+                this.callbacks = null;
+            }
+
+            for (Runnable callback : callbacks)
+                callback.run();
+        }
+    }
+
+    /**
+     * View of a shared load, which can't be cancelled by the callers sharing it.
+     */
+    private static final class LoadView implements Future<Void> {
+
+        @Nonnull
+        private final Future<Void> load;
+
+        LoadView(@Nonnull Future<Void> load) {
+            this.load = load;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return load.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return load.isDone();
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            return load.get();
+        }
+
+        @Override
+        public Void get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return load.get(timeout, unit);
+        }
+    }
+
+    /**
+     * Messages of a locale and the time they were loaded. If the first load of the locale
+     * fails, a snapshot without messages records the time of the failure.
+     */
+    private static final class Snapshot {
+
+        @Nullable
+        final Map<String, String> messages;
+
+        final long loadTime = System.nanoTime();
+
+        Snapshot(@Nullable Map<String, String> messages) {
+            this.messages = messages;
+        }
+    }
+}
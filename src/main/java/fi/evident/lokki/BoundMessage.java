@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * A single message of a Messages-object, bound to the source of its localizations.
+ * <p>
+ * This class is used by the generated implementations of Messages-interfaces and
+ * is not meant to be used directly.
+ */
+public final class BoundMessage {
+
+    /** Slot of messages which are not looked up from a {@link MessageTable} */
+    static final int NO_SLOT = -1;
+
+    @Nonnull
+    private final MessageDescriptor descriptor;
+
+    @Nonnull
+    private final MessageResolver resolver;
+
+    /**
+     * Patterns of this message for each locale supported by the resolver, or null if the
+     * resolver does not have a fixed set of locales. Locales without the message have null
+     * patterns, the default message is applied when the message is looked up.
+     */
+    @Nullable
+    private final String[] patterns;
+
+    /**
+     * Slot of this message in the {@link MessageTable} of the resolver, or {@link #NO_SLOT}.
+     */
+    private final int slot;
+
+    /**
+     * Counters of this message, or null if the resolver does not collect metrics.
+     */
+    @Nullable
+    private final KeyMetrics metrics;
+
+    BoundMessage(@Nonnull MessageDescriptor descriptor, @Nonnull MessageResolver resolver, @Nullable String[] patterns,
+                 int slot, @Nullable KeyMetrics metrics) {
+        this.descriptor = requireNonNull(descriptor);
+        this.resolver = requireNonNull(resolver);
+        this.patterns = patterns;
+        this.slot = slot;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the localized message.
+     */
+    @Nonnull
+    public String format() {
+        return resolver.format(this, null);
+    }
+
+    /**
+     * Returns the localized message, formatted with given arguments.
+     */
+    @Nonnull
+    public String format(@Nullable Object... args) {
+        return resolver.format(this, args);
+    }
+
+    /**
+     * Appends the localized message to given target.
+     */
+    public void formatTo(@Nonnull Appendable out) throws IOException {
+        resolver.formatTo(this, out, null);
+    }
+
+    /**
+     * Appends the localized message, formatted with given arguments, to given target.
+     */
+    public void formatTo(@Nonnull Appendable out, @Nullable Object... args) throws IOException {
+        resolver.formatTo(this, out, args);
+    }
+
+    /**
+     * Appends the localized message to given builder.
+     */
+    public void formatTo(@Nonnull StringBuilder sb) {
+        formatTo(sb, (Object[]) null);
+    }
+
+    /**
+     * Appends the localized message, formatted with given arguments, to given builder.
+     */
+    public void formatTo(@Nonnull StringBuilder sb, @Nullable Object... args) {
+        try {
+            resolver.formatTo(this, sb, args);
+        } catch (IOException e) {
+            throw new AssertionError(e); // StringBuilder never throws IOException
+        }
+    }
+
+    @Nonnull
+    MessageDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    @Nullable
+    String[] getPatterns() {
+        return patterns;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    @Nullable
+    KeyMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundMessage[key=" + descriptor.getKey() + "]";
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * A MessageSource which reads the messages from a binary catalog created by
+ * {@link MessageCatalogCompiler}.
+ * <p>
+ * The catalog is memory-mapped and the messages are decoded only when they are looked up,
+ * so the heap usage does not depend on the number of messages or locales in the catalog.
+ * Locales are searched like resource bundles: messages for {@code fi_FI} are searched from
+ * the tables of {@code fi_FI}, {@code fi} and the root locale, in that order.
+ */
+public final class CatalogMessageSource implements BatchMessageSource {
+
+    /*
+     * The catalog consists of a header, a directory of tables, the tables and the string data.
+     * All integers are big-endian and all offsets are relative to the start of the file.
+     *
+     *   header:    magic, version, table count
+     *   directory: locale name offset, locale name length, table offset, entry count (for each table)
+     *   table:     key hash, key offset, key length, value offset, value length (for each entry)
+     *   data:      UTF-8 encoded strings
+     *
+     * The entries of each table are sorted by the hash of the key and then by the UTF-8 bytes of
+     * the key, so that lookups can use binary search.
+     */
+
+    static final int MAGIC = 0x4c4f4b4b;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    static final int DIRECTORY_ENTRY_SIZE = 16;
+    static final int TABLE_ENTRY_SIZE = 20;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Nonnull
+    private final ByteBuffer buffer;
+
+    @Nonnull
+    private final LocaleProvider localeProvider;
+
+    @Nonnull
+    private final Map<String, Table> tablesByLocaleName = new HashMap<String, Table>();
+
+    @Nonnull
+    private final ConcurrentMap<Locale, Table[]> tablesByLocale = new ConcurrentHashMap<Locale, Table[]>();
+
+    /**
+     * Maps given catalog file into memory.
+     *
+     * @throws IOException if the file can't be read or is not a valid catalog
+     */
+    public CatalogMessageSource(@Nonnull File catalog, @Nonnull LocaleProvider localeProvider) throws IOException {
+        this(map(catalog), localeProvider);
+    }
+
+    CatalogMessageSource(@Nonnull ByteBuffer buffer, @Nonnull LocaleProvider localeProvider) throws IOException {
+        this.buffer = requireNonNull(buffer);
+        this.localeProvider = requireNonNull(localeProvider);
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("not a message catalog");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("unsupported catalog version: " + buffer.getInt(4));
+
+        int tableCount = buffer.getInt(8);
+        for (int i = 0; i < tableCount; i++) {
+            int position = HEADER_SIZE + i * DIRECTORY_ENTRY_SIZE;
+            String localeName = decode(buffer.getInt(position), buffer.getInt(position + 4));
+            tablesByLocaleName.put(localeName, new Table(buffer.getInt(position + 8), buffer.getInt(position + 12)));
+        }
+    }
+
+    @Nonnull
+    private static ByteBuffer map(@Nonnull File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid after the channel is closed
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getMessage(@Nonnull String key) {
+        return getMessage(key, localeProvider.getLocale());
+    }
+
+    /**
+     * Returns the message for given key and locale, or null if the message is not found.
+     */
+    @Nullable
+    String getMessage(@Nonnull String key, @Nonnull Locale locale) {
+        return find(tablesFor(locale), key);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, String> getMessages(@Nonnull Collection<String> keys) {
+        Table[] tables = tablesFor(localeProvider.getLocale());
+        Map<String, String> messages = new HashMap<String, String>(keys.size() * 2);
+
+        for (String key : keys) {
+            String message = find(tables, key);
+            if (message != null)
+                messages.put(key, message);
+        }
+
+        return messages;
+    }
+
+    /**
+     * Returns the message for given key from the first table that contains it.
+     */
+    @Nullable
+    private String find(@Nonnull Table[] tables, @Nonnull String key) {
+        byte[] keyBytes = key.getBytes(UTF8);
+        int hash = key.hashCode();
+
+        for (Table table : tables) {
+            int entry = table.find(hash, keyBytes);
+            if (entry != -1)
+                return decode(buffer.getInt(entry + 12), buffer.getInt(entry + 16));
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the tables to search for given locale, most specific first.
+     */
+    @Nonnull
+    private Table[] tablesFor(@Nonnull Locale locale) {
+        Table[] tables = tablesByLocale.get(locale);
+        if (tables == null) {
+            List<Table> list = new ArrayList<Table>();
+            for (Locale candidate : ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES).getCandidateLocales("", locale)) {
+                Table table = tablesByLocaleName.get(candidate.toString());
+                if (table != null)
+                    list.add(table);
+            }
+
+            tables = list.toArray(new Table[list.size()]);
+            Table[] old = tablesByLocale.putIfAbsent(locale, tables);
+            if (old != null)
+                tables = old;
+        }
+        return tables;
+    }
+
+    @Nonnull
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = buffer.get(offset + i);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Compares the bytes of the key at given offset with given bytes.
+     */
+    private int compareKey(int offset, int length, @Nonnull byte[] key) {
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int a = buffer.get(offset + i) & 0xff;
+            int b = key[i] & 0xff;
+            if (a != b)
+                return a - b;
+        }
+        return length - key.length;
+    }
+
+    private final class Table {
+
+        private final int offset;
+
+        private final int size;
+
+        Table(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /**
+         * Returns the position of the entry for given key, or -1 if there is no such entry.
+         */
+        int find(int hash, @Nonnull byte[] key) {
+            int low = 0;
+            int high = size - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int entry = offset + middle * TABLE_ENTRY_SIZE;
+
+                int entryHash = buffer.getInt(entry);
+                int cmp = (entryHash < hash) ? -1 : (entryHash > hash) ? 1 : compareKey(buffer.getInt(entry + 4), buffer.getInt(entry + 8), key);
+
+                if (cmp < 0)
+                    low = middle + 1;
+                else if (cmp > 0)
+                    high = middle - 1;
+                else
+                    return entry;
+            }
+
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lazily computed values associated with classes, much like {@code java.lang.ClassValue} of Java 7.
+ * <p>
+ * Classes are referenced weakly and values softly. The values usually reference their
+ * class, and thus its class loader, strongly, so a cached value keeps the class loader of
+ * a redeployed application alive until the garbage collector clears the value, which
+ * happens only under memory pressure or when the value has not been used for a while
+ * according to the soft reference policy of the JVM. Only then is the entry of the class
+ * purged. A value may be computed more than once if multiple threads ask for it concurrently,
+ * but all threads will see the same value.
+ * <p>
+ * Looking up a cached value does not lock. Only storing a new value takes a lock, which
+ * is also used for purging the entries of unloaded classes.
+ */
+abstract class ClassCache<V> {
+
+    @Nonnull
+    private final ConcurrentMap<Object, SoftReference<V>> values = new ConcurrentHashMap<Object, SoftReference<V>>();
+
+    @Nonnull
+    private final ReferenceQueue<Class<?>> unloadedClasses = new ReferenceQueue<Class<?>>();
+
+    /**
+     * Computes the value for given class. Called without holding any locks.
+     */
+    @Nonnull
+    protected abstract V computeValue(@Nonnull Class<?> cl);
+
+    @Nonnull
+    V get(@Nonnull Class<?> cl) {
+        V value = getExisting(cl);
+        if (value != null)
+            return value;
+
+        value = computeValue(cl);
+
+        synchronized (unloadedClasses) {
+            V existing = getExisting(cl);
+            if (existing != null)
+                return existing;
+
+            purgeUnloadedClasses();
+            values.put(new WeakClassKey(cl, unloadedClasses), new SoftReference<V>(value));
+            return value;
+        }
+    }
+
+    /**
+     * Returns the values computed so far, except those cleared under memory pressure.
+     */
+    @Nonnull
+    List<V> values() {
+        List<V> result = new ArrayList<V>();
+        for (SoftReference<V> ref : values.values()) {
+            V value = ref.get();
+            if (value != null)
+                result.add(value);
+        }
+        return result;
+    }
+
+    @Nullable
+    private V getExisting(@Nonnull Class<?> cl) {
+        SoftReference<V> ref = values.get(new LookupKey(cl));
+        return (ref != null) ? ref.get() : null;
+    }
+
+    /**
+     * Removes the entries of classes that have been unloaded. Must be called while holding the lock.
+     */
+    private void purgeUnloadedClasses() {
+        Reference<? extends Class<?>> key;
+        while ((key = unloadedClasses.poll()) != null)
+            values.remove(key);
+    }
+
+    /**
+     * Returns the class referred to by given key, or null if the key has been cleared.
+     */
+    @Nullable
+    private static Class<?> classOf(@Nonnull Object key) {
+        if (key instanceof WeakClassKey)
+            return ((WeakClassKey) key).get();
+        if (key instanceof LookupKey)
+            return ((LookupKey) key).cl;
+        return null;
+    }
+
+    /**
+     * Key of a stored entry, referencing the class weakly. Keys are equal to other keys
+     * of the same class, and cleared keys are equal only to themselves.
+     */
+    private static final class WeakClassKey extends WeakReference<Class<?>> {
+
+        private final int hash;
+
+        WeakClassKey(@Nonnull Class<?> cl, @Nonnull ReferenceQueue<Class<?>> queue) {
+            super(cl, queue);
+            this.hash = System.identityHashCode(cl);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+
+            Class<?> cl = get();
+            return cl != null && obj != null && classOf(obj) == cl;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Short-lived key for looking up the entry of a class.
+     */
+    private static final class LookupKey {
+
+        @Nonnull
+        private final Class<?> cl;
+
+        LookupKey(@Nonnull Class<?> cl) {
+            this.cl = cl;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || (obj != null && classOf(obj) == cl);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(cl);
+        }
+    }
+}
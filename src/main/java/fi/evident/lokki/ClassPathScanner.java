@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the names of the classes in a package and its subpackages, from both
+ * directories and jar-files visible to a class loader.
+ * <p>
+ * Packages are located using {@link ClassLoader#getResources}, so jar-files built
+ * without directory entries can't be scanned.
+ */
+final class ClassPathScanner {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private ClassPathScanner() { }
+
+    @Nonnull
+    static Set<String> findClassNames(@Nonnull ClassLoader loader, @Nonnull String packageName) throws IOException {
+        String path = packageName.replace('.', '/');
+        Set<String> classNames = new TreeSet<String>();
+
+        Enumeration<URL> urls = loader.getResources(path);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if (url.getProtocol().equals("file"))
+                scanDirectory(toFile(url), packageName, classNames);
+            else if (url.getProtocol().equals("jar"))
+                scanJar(url, path, classNames);
+        }
+
+        return classNames;
+    }
+
+    @Nonnull
+    private static File toFile(@Nonnull URL url) throws IOException {
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("invalid URL: " + url);
+        }
+    }
+
+    private static void scanDirectory(@Nonnull File directory, @Nonnull String packageName, @Nonnull Set<String> classNames) {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory())
+                scanDirectory(file, packageName + "." + name, classNames);
+            else if (isClassFile(name))
+                classNames.add(packageName + "." + name.substring(0, name.length() - CLASS_SUFFIX.length()));
+        }
+    }
+
+    private static void scanJar(@Nonnull URL url, @Nonnull String path, @Nonnull Set<String> classNames) throws IOException {
+        JarURLConnection connection = (JarURLConnection) url.openConnection();
+        connection.setUseCaches(false);
+
+        JarFile jar = connection.getJarFile();
+        try {
+            String prefix = path + "/";
+            for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                String name = entries.nextElement().getName();
+                if (name.startsWith(prefix) && isClassFile(name))
+                    classNames.add(name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static boolean isClassFile(@Nonnull String name) {
+        return name.endsWith(CLASS_SUFFIX) && !name.endsWith("package-info.class");
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * An immutable, thread-safe representation of a pattern which consists only of
+ * literal text and simple {@code {n}} placeholders.
+ * <p>
+ * Quotes are interpreted like {@link java.text.MessageFormat} interprets them. Patterns
+ * containing anything more complex, like {@code {0,number}} or {@code {0,choice,...}}, can't
+ * be compiled and must be formatted using MessageFormat. Since MessageFormat formats numbers
+ * and dates using the locale, compiled patterns can't format those either: use
+ * {@link #canFormat(Object[])} to check the arguments before formatting.
+ */
+final class CompiledPattern {
+
+    /** Literal text before each argument and after the last one */
+    @Nonnull
+    private final String[] literals;
+
+    @Nonnull
+    private final int[] argumentIndices;
+
+    private CompiledPattern(@Nonnull String[] literals, @Nonnull int[] argumentIndices) {
+        this.literals = literals;
+        this.argumentIndices = argumentIndices;
+    }
+
+    /**
+     * Compiles given pattern or returns null if the pattern uses features that
+     * require MessageFormat.
+     */
+    @Nullable
+    static CompiledPattern compile(@Nonnull String pattern) {
+        List<String> literals = new ArrayList<String>();
+        List<Integer> argumentIndices = new ArrayList<Integer>();
+
+        StringBuilder literal = new StringBuilder(pattern.length());
+        boolean inQuote = false;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+
+            if (ch == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append(ch);
+                    i++;
+                } else {
+                    inQuote = !inQuote;
+                }
+            } else if (ch == '{' && !inQuote) {
+                int end = pattern.indexOf('}', i + 1);
+                if (end == -1)
+                    return null;
+
+                int index = parseArgumentIndex(pattern, i + 1, end);
+                if (index == -1)
+                    return null;
+
+                literals.add(literal.toString());
+                argumentIndices.add(index);
+                literal.setLength(0);
+                i = end;
+            } else {
+                literal.append(ch);
+            }
+        }
+
+        literals.add(literal.toString());
+
+        int[] indices = new int[argumentIndices.size()];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = argumentIndices.get(i);
+
+        return new CompiledPattern(literals.toArray(new String[literals.size()]), indices);
+    }
+
+    /**
+     * Parses the argument index between given positions or returns -1 if the
+     * placeholder is anything but a plain non-negative integer.
+     */
+    private static int parseArgumentIndex(@Nonnull String pattern, int start, int end) {
+        if (start == end || end - start > 9)
+            return -1;
+
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char ch = pattern.charAt(i);
+            if (ch < '0' || ch > '9')
+                return -1;
+            index = index * 10 + (ch - '0');
+        }
+        return index;
+    }
+
+    /**
+     * Returns true if this pattern can format given arguments exactly like MessageFormat.
+     * Numbers and dates need locale specific formatting, which is left to MessageFormat.
+     */
+    boolean canFormat(@Nonnull Object[] args) {
+        for (int index : argumentIndices) {
+            if (index < args.length) {
+                Object arg = args[index];
+                if (arg instanceof Number || arg instanceof Date)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    String format(@Nonnull Object[] args) {
+        StringBuilder sb = new StringBuilder();
+        formatTo(args, sb);
+        return sb.toString();
+    }
+
+    void formatTo(@Nonnull Object[] args, @Nonnull StringBuilder out) {
+        out.append(literals[0]);
+        for (int i = 0; i < argumentIndices.length; i++) {
+            out.append(argumentString(argumentIndices[i], args));
+            out.append(literals[i + 1]);
+        }
+    }
+
+    void formatTo(@Nonnull Object[] args, @Nonnull Appendable out) throws IOException {
+        out.append(literals[0]);
+        for (int i = 0; i < argumentIndices.length; i++) {
+            out.append(argumentString(argumentIndices[i], args));
+            out.append(literals[i + 1]);
+        }
+    }
+
+    @Nonnull
+    private static String argumentString(int index, @Nonnull Object[] args) {
+        if (index >= args.length)
+            return "{" + index + "}";
+
+        Object arg = args[index];
+        String str = (arg != null) ? arg.toString() : null;
+        return (str != null) ? str : "null";
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * A MessageSource which layers other sources on top of each other, for example database
+ * overrides on top of tenant specific bundles on top of the bundles of the application.
+ * Each message is taken from the first layer that has it.
+ * <p>
+ * The result of each lookup, including the information that no layer has the message, is
+ * memoized in a merged view of each locale, so that repeated lookups cost a single hash
+ * lookup regardless of the number of layers. The views are filled on demand, since
+ * message sources can't list their keys. The messages found are bounded by the contents
+ * of the layers, but arbitrary keys may be missing, so only a fixed number of missing keys
+ * is memoized for each locale and further misses are looked up from the layers each time.
+ * <p>
+ * The layers must resolve the same locale as the locale provider of this source, which is
+ * easiest achieved by giving them the same provider. When the messages of a layer change,
+ * call {@link #invalidate(MessageSource)} so that the messages it may affect are looked up
+ * again. Messages taken from the layers above it stay memoized.
+ */
+public final class CompositeMessageSource implements BatchMessageSource {
+
+    static final int DEFAULT_MAX_MISSING_KEYS = 1024;
+
+    @Nonnull
+    private final LocaleProvider localeProvider;
+
+    @Nonnull
+    private final MessageSource[] layers;
+
+    /** Memoized result of keys that no layer has */
+    @Nonnull
+    private final Resolved missing;
+
+    private final int maxMissingKeys;
+
+    /**
+     * Merged views of each locale. Invalidation replaces the whole map, so that lookups
+     * racing with the invalidation can't put stale results into the new views.
+     */
+    @Nonnull
+    private volatile ConcurrentMap<Locale, View> viewsByLocale =
+        new ConcurrentHashMap<Locale, View>();
+
+    /**
+     * Constructs a source of given layers, in the order of decreasing precedence.
+     */
+    public CompositeMessageSource(@Nonnull LocaleProvider localeProvider, @Nonnull List<? extends MessageSource> layers) {
+        this(localeProvider, layers, DEFAULT_MAX_MISSING_KEYS);
+    }
+
+    CompositeMessageSource(@Nonnull LocaleProvider localeProvider, @Nonnull List<? extends MessageSource> layers, int maxMissingKeys) {
+        if (maxMissingKeys < 0) throw new IllegalArgumentException("invalid maxMissingKeys: " + maxMissingKeys);
+
+        this.maxMissingKeys = maxMissingKeys;
+        this.localeProvider = requireNonNull(localeProvider);
+        this.layers = layers.toArray(new MessageSource[layers.size()]);
+
+        for (MessageSource layer : this.layers)
+            requireNonNull(layer);
+
+        this.missing = new Resolved(null, this.layers.length);
+    }
+
+    /**
+     * Constructs a source of given layers, in the order of decreasing precedence.
+     */
+    public CompositeMessageSource(@Nonnull LocaleProvider localeProvider, @Nonnull MessageSource... layers) {
+        this(localeProvider, Arrays.asList(layers));
+    }
+
+    @Nullable
+    @Override
+    public String getMessage(@Nonnull String key) {
+        return resolve(viewFor(localeProvider.getLocale()), key).message;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, String> getMessages(@Nonnull Collection<String> keys) {
+        View view = viewFor(localeProvider.getLocale());
+        Map<String, String> messages = new HashMap<String, String>(keys.size() * 2);
+
+        for (String key : keys) {
+            String message = resolve(view, key).message;
+            if (message != null)
+                messages.put(key, message);
+        }
+
+        return messages;
+    }
+
+    /**
+     * Discards the memoized messages that given layer may affect: the messages found in the
+     * layer or in the layers below it, and the messages that were not found at all.
+     *
+     * @throws IllegalArgumentException if given source is not a layer of this source
+     */
+    public synchronized void invalidate(@Nonnull MessageSource layer) {
+        int index = indexOf(layer);
+
+        ConcurrentMap<Locale, View> newViews = new ConcurrentHashMap<Locale, View>();
+        for (Map.Entry<Locale, View> entry : viewsByLocale.entrySet()) {
+            View view = new View();
+            for (Map.Entry<String, Resolved> message : entry.getValue().messages.entrySet())
+                if (message.getValue().layer < index)
+                    view.messages.put(message.getKey(), message.getValue());
+            newViews.put(entry.getKey(), view);
+        }
+
+        viewsByLocale = newViews;
+    }
+
+    /**
+     * Discards all memoized messages.
+     */
+    public synchronized void invalidateAll() {
+        viewsByLocale = new ConcurrentHashMap<Locale, View>();
+    }
+
+    /**
+     * Returns the number of messages memoized for given locale, for testing.
+     */
+    int getMemoizedCount(@Nonnull Locale locale) {
+        View view = viewsByLocale.get(locale);
+        return (view != null) ? view.size() : 0;
+    }
+
+    private int indexOf(@Nonnull MessageSource layer) {
+        for (int i = 0; i < layers.length; i++)
+            if (layers[i] == layer)
+                return i;
+
+        throw new IllegalArgumentException("not a layer of this source: " + layer);
+    }
+
+    @Nonnull
+    private View viewFor(@Nonnull Locale locale) {
+        ConcurrentMap<Locale, View> views = viewsByLocale;
+
+        View view = views.get(locale);
+        if (view == null) {
+            view = new View();
+            View old = views.putIfAbsent(locale, view);
+            if (old != null)
+                view = old;
+        }
+        return view;
+    }
+
+    @Nonnull
+    private Resolved resolve(@Nonnull View view, @Nonnull String key) {
+        Resolved resolved = view.messages.get(key);
+        if (resolved == null) {
+            resolved = lookup(key);
+
+            if (resolved == missing && !view.reserveMissingKey(maxMissingKeys))
+                return resolved;
+
+            Resolved old = view.messages.putIfAbsent(key, resolved);
+            if (old != null)
+                resolved = old;
+        }
+        return resolved;
+    }
+
+    @Nonnull
+    private Resolved lookup(@Nonnull String key) {
+        for (int i = 0; i < layers.length; i++) {
+            String message = layers[i].getMessage(key);
+            if (message != null)
+                return new Resolved(message, i);
+        }
+        return missing;
+    }
+
+    /**
+     * Merged view of a single locale.
+     */
+    private static final class View {
+
+        @Nonnull
+        final ConcurrentMap<String, Resolved> messages = new ConcurrentHashMap<String, Resolved>();
+
+        @Nonnull
+        private final AtomicInteger missingKeyCount = new AtomicInteger();
+
+        /**
+         * Reserves room for memoizing a missing key, returning false if the view already has
+         * given number of missing keys. Racing lookups of the same key may use up extra room.
+         */
+        boolean reserveMissingKey(int maxMissingKeys) {
+            while (true) {
+                int count = missingKeyCount.get();
+                if (count >= maxMissingKeys)
+                    return false;
+                if (missingKeyCount.compareAndSet(count, count + 1))
+                    return true;
+            }
+        }
+
+        int size() {
+            return messages.size();
+        }
+    }
+
+    /**
+     * A memoized message and the index of the layer it was found in. Messages that were
+     * not found are memoized with a null message and the index past the last layer.
+     */
+    private static final class Resolved {
+
+        @Nullable
+        final String message;
+
+        final int layer;
+
+        Resolved(@Nullable String message, int layer) {
+            this.message = message;
+            this.layer = layer;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * A MessageSource which loads the messages from properties-files in a directory
+ * and can reload them when they change, without restarting the application.
+ * <p>
+ * The files are named like resource bundles: messages for base name {@code messages}
+ * and locale {@code fi_FI} are searched from {@code messages_fi_FI.properties},
+ * {@code messages_fi.properties} and {@code messages.properties}, in that order.
+ * <p>
+ * The loaded messages form an immutable snapshot. {@link #checkForChanges()} reloads
+ * the files which have been added, removed or modified since the last check and then
+ * replaces the snapshot atomically, so lookups never block and never see a partially
+ * loaded state. Files are considered modified when their modification time or length
+ * changes. The checks can be run periodically using {@link #scheduleChecks}.
+ */
+public final class DirectoryMessageSource implements BatchMessageSource {
+
+    private static final String SUFFIX = ".properties";
+
+    @Nonnull
+    private final File directory;
+
+    @Nonnull
+    private final String baseName;
+
+    @Nonnull
+    private final LocaleProvider localeProvider;
+
+    @Nonnull
+    private volatile Map<String, LoadedFile> snapshot = Collections.emptyMap();
+
+    @Nonnull
+    private final ConcurrentMap<Locale, String[]> fileNamesByLocale = new ConcurrentHashMap<Locale, String[]>();
+
+    /**
+     * Constructs a source for given directory and loads the files in it.
+     *
+     * @throws IOException if the directory or its files can't be read
+     */
+    public DirectoryMessageSource(@Nonnull File directory, @Nonnull String baseName, @Nonnull LocaleProvider localeProvider) throws IOException {
+        this.directory = requireNonNull(directory);
+        this.baseName = requireNonNull(baseName);
+        this.localeProvider = requireNonNull(localeProvider);
+
+        checkForChanges();
+    }
+
+    @Nullable
+    @Override
+    public String getMessage(@Nonnull String key) {
+        return getMessage(key, localeProvider.getLocale());
+    }
+
+    /**
+     * Returns the message for given key and locale, or null if the message is not found.
+     */
+    @Nullable
+    String getMessage(@Nonnull String key, @Nonnull Locale locale) {
+        Map<String, LoadedFile> files = snapshot;
+
+        for (String fileName : fileNamesFor(locale)) {
+            LoadedFile file = files.get(fileName);
+            if (file != null) {
+                String message = file.messages.get(key);
+                if (message != null)
+                    return message;
+            }
+        }
+
+        return null;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, String> getMessages(@Nonnull Collection<String> keys) {
+        Map<String, LoadedFile> files = snapshot;
+        String[] fileNames = fileNamesFor(localeProvider.getLocale());
+        Map<String, String> messages = new HashMap<String, String>(keys.size() * 2);
+
+        // Search the least specific file first, so that more specific files override it
+        for (int i = fileNames.length - 1; i >= 0; i--) {
+            LoadedFile file = files.get(fileNames[i]);
+            if (file != null) {
+                for (String key : keys) {
+                    String message = file.messages.get(key);
+                    if (message != null)
+                        messages.put(key, message);
+                }
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * Reloads the files that have changed since the last check. If loading any of
+     * the files fails, the current snapshot is kept.
+     *
+     * @return true if anything changed
+     * @throws IOException if the directory or a changed file can't be read
+     */
+    public synchronized boolean checkForChanges() throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(@Nonnull File file) {
+                return file.isFile() && isBundleFileName(file.getName());
+            }
+        });
+        if (files == null)
+            throw new IOException("failed to list files in " + directory);
+
+        Map<String, LoadedFile> oldSnapshot = snapshot;
+        Map<String, LoadedFile> newSnapshot = new HashMap<String, LoadedFile>();
+        boolean changed = false;
+
+        for (File file : files) {
+            LoadedFile loaded = oldSnapshot.get(file.getName());
+            if (loaded == null || !loaded.isUpToDate(file)) {
+                loaded = LoadedFile.load(file);
+                changed = true;
+            }
+            newSnapshot.put(file.getName(), loaded);
+        }
+
+        // If nothing was added or modified, the snapshots differ only if files were removed
+        if (!changed && newSnapshot.size() == oldSnapshot.size())
+            return false;
+
+        snapshot = Collections.unmodifiableMap(newSnapshot);
+        return true;
+    }
+
+    /**
+     * Schedules {@link #checkForChanges()} to be run periodically using given executor.
+     * Failed checks keep the current snapshot and are retried on the next run.
+     */
+    @Nonnull
+    public ScheduledFuture<?> scheduleChecks(@Nonnull ScheduledExecutorService executor, long period, @Nonnull TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkForChanges();
+                } catch (IOException e) {
+                    // Keep serving the current snapshot
+                }
+            }
+        }, period, period, unit);
+    }
+
+    private boolean isBundleFileName(@Nonnull String name) {
+        if (!name.startsWith(baseName) || !name.endsWith(SUFFIX))
+            return false;
+
+        int suffixStart = name.length() - SUFFIX.length();
+        return suffixStart == baseName.length() || (suffixStart > baseName.length() && name.charAt(baseName.length()) == '_');
+    }
+
+    /**
+     * Returns the names of files to search for given locale, most specific first.
+     */
+    @Nonnull
+    private String[] fileNamesFor(@Nonnull Locale locale) {
+        String[] fileNames = fileNamesByLocale.get(locale);
+        if (fileNames == null) {
+            ResourceBundle.Control control = ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_PROPERTIES);
+            List<Locale> candidates = control.getCandidateLocales(baseName, locale);
+
+            fileNames = new String[candidates.size()];
+            for (int i = 0; i < fileNames.length; i++)
+                fileNames[i] = control.toBundleName(baseName, candidates.get(i)) + SUFFIX;
+
+            String[] old = fileNamesByLocale.putIfAbsent(locale, fileNames);
+            if (old != null)
+                fileNames = old;
+        }
+        return fileNames;
+    }
+
+    private static final class LoadedFile {
+
+        private final long lastModified;
+
+        private final long length;
+
+        @Nonnull
+        private final Map<String, String> messages;
+
+        private LoadedFile(long lastModified, long length, @Nonnull Map<String, String> messages) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.messages = messages;
+        }
+
+        @Nonnull
+        static LoadedFile load(@Nonnull File file) throws IOException {
+            // Read the metadata first, so that concurrent modifications are picked up by the next check
+            long lastModified = file.lastModified();
+            long length = file.length();
+
+            Properties properties = new Properties();
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+
+            Map<String, String> messages = new HashMap<String, String>();
+            for (String key : properties.stringPropertyNames())
+                messages.put(key, properties.getProperty(key));
+
+            return new LoadedFile(lastModified, length, messages);
+        }
+
+        boolean isUpToDate(@Nonnull File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+}
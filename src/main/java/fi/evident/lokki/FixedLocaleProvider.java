@@ -29,11 +29,15 @@ import static fi.evident.lokki.Utils.requireNonNull;
 
 /**
  * A LocaleProvider which always returns specified Locale.
+ * <p>
+ * The locale may be changed at any time and the change is visible to all threads.
+ * For locales specific to each thread or request, use {@link ThreadLocalLocaleProvider}
+ * or {@link ScopedLocaleProvider} instead.
  */
 public final class FixedLocaleProvider implements LocaleProvider {
 
     @Nonnull
-    private Locale locale;
+    private volatile Locale locale;
 
     public FixedLocaleProvider() {
         this(Locale.getDefault());
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Minimal JSON output for exporting messages.
+ */
+final class Json {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private Json() { }
+
+    /**
+     * Writes given string as a quoted JSON string. Besides the characters that JSON requires
+     * to be escaped, '&lt;', '&gt;' and '&amp;' and the line separators U+2028 and U+2029 are
+     * escaped, so that the output can be embedded in HTML script elements and JavaScript.
+     */
+    static void writeString(@Nonnull String s, @Nonnull Writer out) throws IOException {
+        out.write('"');
+
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            String escape = escapeFor(ch);
+            if (escape != null || needsUnicodeEscape(ch)) {
+                out.write(s, start, i - start);
+                if (escape != null)
+                    out.write(escape);
+                else
+                    writeUnicodeEscape(ch, out);
+                start = i + 1;
+            }
+        }
+        out.write(s, start, s.length() - start);
+
+        out.write('"');
+    }
+
+    private static String escapeFor(char ch) {
+        switch (ch) {
+            case '"':  return "\\\"";
+            case '\\': return "\\\\";
+            case '\n': return "\\n";
+            case '\r': return "\\r";
+            case '\t': return "\\t";
+            case '\b': return "\\b";
+            case '\f': return "\\f";
+            default:   return null;
+        }
+    }
+
+    private static boolean needsUnicodeEscape(char ch) {
+        return ch < 0x20 || ch == '<' || ch == '>' || ch == '&' || ch == '\u2028' || ch == '\u2029';
+    }
+
+    private static void writeUnicodeEscape(char ch, @Nonnull Writer out) throws IOException {
+        out.write("\\u");
+        out.write(HEX_DIGITS[(ch >> 12) & 0xf]);
+        out.write(HEX_DIGITS[(ch >> 8) & 0xf]);
+        out.write(HEX_DIGITS[(ch >> 4) & 0xf]);
+        out.write(HEX_DIGITS[ch & 0xf]);
+    }
+}
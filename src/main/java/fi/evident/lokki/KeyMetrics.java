@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * Counters of a single message of a Messages-interface, kept separately for each locale.
+ * Created when the message is bound, so that recording a lookup needs just a locale lookup.
+ */
+final class KeyMetrics {
+
+    static final int LOOKUPS = 0;
+    static final int DEFAULT_MESSAGES = 1;
+    static final int MISSING_MESSAGES = 2;
+    static final int FORMATS = 3;
+    static final int FORMAT_NANOS = 4;
+
+    private static final int COUNTERS = 5;
+
+    @Nonnull
+    private final String interfaceName;
+
+    @Nonnull
+    private final String key;
+
+    @Nonnull
+    private final ConcurrentMap<Locale, StripedCounters> countersByLocale = new ConcurrentHashMap<Locale, StripedCounters>();
+
+    KeyMetrics(@Nonnull String interfaceName, @Nonnull String key) {
+        this.interfaceName = requireNonNull(interfaceName);
+        this.key = requireNonNull(key);
+    }
+
+    /**
+     * Records a lookup of the message.
+     *
+     * @param defaultMessage true if the message was not found and the default message was used
+     * @param missing true if there was neither a message nor a default message
+     */
+    void recordLookup(@Nonnull Locale locale, boolean defaultMessage, boolean missing) {
+        StripedCounters counters = countersFor(locale);
+        counters.increment(LOOKUPS);
+        if (defaultMessage)
+            counters.increment(DEFAULT_MESSAGES);
+        if (missing)
+            counters.increment(MISSING_MESSAGES);
+    }
+
+    void recordFormat(@Nonnull Locale locale, long nanos) {
+        StripedCounters counters = countersFor(locale);
+        counters.increment(FORMATS);
+        counters.add(FORMAT_NANOS, nanos);
+    }
+
+    @Nonnull
+    private StripedCounters countersFor(@Nonnull Locale locale) {
+        StripedCounters counters = countersByLocale.get(locale);
+        if (counters == null) {
+            counters = new StripedCounters(COUNTERS);
+            StripedCounters old = countersByLocale.putIfAbsent(locale, counters);
+            if (old != null)
+                counters = old;
+        }
+        return counters;
+    }
+
+    @Nonnull
+    String getInterfaceName() {
+        return interfaceName;
+    }
+
+    @Nonnull
+    String getKey() {
+        return key;
+    }
+
+    @Nonnull
+    Map<Locale, StripedCounters> getCountersByLocale() {
+        return countersByLocale;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * Assigns dense integer indices to a fixed set of supported locales.
+ * <p>
+ * A locale which is not supported is mapped to the first supported locale with the
+ * same language or, if there is no such locale, to the fallback locale.
+ */
+final class LocaleIndex {
+
+    @Nonnull
+    private final Locale[] locales;
+
+    @Nonnull
+    private final Map<Locale, Integer> indicesByLocale = new HashMap<Locale, Integer>();
+
+    @Nonnull
+    private final Map<String, Integer> indicesByLanguage = new HashMap<String, Integer>();
+
+    private final int fallbackIndex;
+
+    LocaleIndex(@Nonnull Collection<Locale> supportedLocales, @Nonnull Locale fallbackLocale) {
+        this.locales = new LinkedHashSet<Locale>(supportedLocales).toArray(new Locale[0]);
+
+        for (int i = 0; i < locales.length; i++) {
+            indicesByLocale.put(locales[i], i);
+
+            if (!indicesByLanguage.containsKey(locales[i].getLanguage()))
+                indicesByLanguage.put(locales[i].getLanguage(), i);
+        }
+
+        Integer index = indicesByLocale.get(fallbackLocale);
+        if (index == null)
+            throw new IllegalArgumentException("fallback locale " + fallbackLocale + " is not one of the supported locales " + supportedLocales);
+
+        this.fallbackIndex = index;
+    }
+
+    /**
+     * Returns the number of supported locales.
+     */
+    int size() {
+        return locales.length;
+    }
+
+    /**
+     * Returns the supported locale with given index.
+     */
+    @Nonnull
+    Locale getLocale(int index) {
+        return locales[index];
+    }
+
+    /**
+     * Returns the index of the supported locale to use for given locale.
+     */
+    int indexOf(@Nonnull Locale locale) {
+        Integer index = indicesByLocale.get(locale);
+        if (index != null)
+            return index;
+
+        index = indicesByLanguage.get(locale.getLanguage());
+        return (index != null) ? index : fallbackIndex;
+    }
+}
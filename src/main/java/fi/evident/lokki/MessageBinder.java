@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * Binds the messages of Messages-implementations generated at compile time to
+ * the source of their localizations.
+ * <p>
+ * This class is used by the generated implementations of Messages-interfaces and
+ * is not meant to be used directly.
+ */
+public final class MessageBinder {
+
+    @Nonnull
+    private final MessageResolver resolver;
+
+    MessageBinder(@Nonnull MessageResolver resolver) {
+        this.resolver = requireNonNull(resolver);
+    }
+
+    /**
+     * Returns a message bound to given key.
+     *
+     * @param key key of the message
+     * @param defaultMessage message to use if the source does not have a message for the key
+     * @param argumentCount number of arguments of the method
+     */
+    @Nonnull
+    public BoundMessage bind(@Nonnull String key, @Nullable String defaultMessage, int argumentCount) {
+        return resolver.bind(new MessageDescriptor(key, defaultMessage, argumentCount));
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import static fi.evident.lokki.CatalogMessageSource.*;
+
+/**
+ * Build-time tool which compiles properties-files into a binary catalog
+ * read by {@link CatalogMessageSource}.
+ * <p>
+ * The files are named like resource bundles: for base name {@code messages}, the
+ * messages of locale {@code fi_FI} are read from {@code messages_fi_FI.properties}
+ * and the messages of the root locale from {@code messages.properties}.
+ * <p>
+ * Usage: {@code java fi.evident.lokki.MessageCatalogCompiler <directory> <baseName> <output>}
+ */
+public final class MessageCatalogCompiler {
+
+    private static final String SUFFIX = ".properties";
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private MessageCatalogCompiler() { }
+
+    public static void main(@Nonnull String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: java " + MessageCatalogCompiler.class.getName() + " <directory> <baseName> <output>");
+            System.exit(1);
+        }
+
+        compile(new File(args[0]), args[1], new File(args[2]));
+    }
+
+    /**
+     * Compiles the properties-files with given base name in given directory into a catalog.
+     */
+    public static void compile(@Nonnull File directory, @Nonnull String baseName, @Nonnull File output) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("failed to list files in " + directory);
+
+        Map<String, Map<String, String>> messagesByLocaleName = new HashMap<String, Map<String, String>>();
+        for (File file : files) {
+            String localeName = localeNameOf(file.getName(), baseName);
+            if (localeName != null && file.isFile())
+                messagesByLocaleName.put(localeName, load(file));
+        }
+
+        OutputStream out = new FileOutputStream(output);
+        try {
+            write(messagesByLocaleName, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the locale name of a bundle file, or null if the file is not a bundle for given base name.
+     */
+    private static String localeNameOf(@Nonnull String fileName, @Nonnull String baseName) {
+        if (!fileName.startsWith(baseName) || !fileName.endsWith(SUFFIX))
+            return null;
+
+        int suffixStart = fileName.length() - SUFFIX.length();
+        if (suffixStart == baseName.length())
+            return "";
+        else if (suffixStart > baseName.length() + 1 && fileName.charAt(baseName.length()) == '_')
+            return fileName.substring(baseName.length() + 1, suffixStart);
+        else
+            return null;
+    }
+
+    @Nonnull
+    private static Map<String, String> load(@Nonnull File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+
+        Map<String, String> messages = new HashMap<String, String>();
+        for (String key : properties.stringPropertyNames())
+            messages.put(key, properties.getProperty(key));
+        return messages;
+    }
+
+    /**
+     * Writes a catalog of given messages, keyed by locale names like {@code fi_FI}.
+     * The root locale has an empty name.
+     */
+    static void write(@Nonnull Map<String, Map<String, String>> messagesByLocaleName, @Nonnull OutputStream out) throws IOException {
+        List<String> localeNames = new ArrayList<String>(messagesByLocaleName.keySet());
+        Collections.sort(localeNames);
+
+        List<List<Entry>> tables = new ArrayList<List<Entry>>(localeNames.size());
+        int entryCount = 0;
+        for (String localeName : localeNames) {
+            List<Entry> entries = new ArrayList<Entry>();
+            for (Map.Entry<String, String> message : messagesByLocaleName.get(localeName).entrySet())
+                entries.add(new Entry(message.getKey(), message.getValue()));
+
+            Collections.sort(entries);
+            tables.add(entries);
+            entryCount += entries.size();
+        }
+
+        int dataStart = HEADER_SIZE + localeNames.size() * DIRECTORY_ENTRY_SIZE + entryCount * TABLE_ENTRY_SIZE;
+        StringPool pool = new StringPool(dataStart);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(localeNames.size());
+
+        int tableOffset = HEADER_SIZE + localeNames.size() * DIRECTORY_ENTRY_SIZE;
+        for (int i = 0; i < localeNames.size(); i++) {
+            byte[] name = localeNames.get(i).getBytes(UTF8);
+            data.writeInt(pool.offsetOf(name));
+            data.writeInt(name.length);
+            data.writeInt(tableOffset);
+            data.writeInt(tables.get(i).size());
+            tableOffset += tables.get(i).size() * TABLE_ENTRY_SIZE;
+        }
+
+        for (List<Entry> table : tables) {
+            for (Entry entry : table) {
+                data.writeInt(entry.hash);
+                data.writeInt(pool.offsetOf(entry.key));
+                data.writeInt(entry.key.length);
+                data.writeInt(pool.offsetOf(entry.value));
+                data.writeInt(entry.value.length);
+            }
+        }
+
+        pool.writeTo(data);
+        data.flush();
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final int hash;
+
+        @Nonnull
+        private final byte[] key;
+
+        @Nonnull
+        private final byte[] value;
+
+        Entry(@Nonnull String key, @Nonnull String value) {
+            this.hash = key.hashCode();
+            this.key = key.getBytes(UTF8);
+            this.value = value.getBytes(UTF8);
+        }
+
+        /**
+         * Orders the entries by hash and then by the bytes of the key, as expected by CatalogMessageSource.
+         */
+        @Override
+        public int compareTo(@Nonnull Entry o) {
+            if (hash != o.hash)
+                return (hash < o.hash) ? -1 : 1;
+
+            int n = Math.min(key.length, o.key.length);
+            for (int i = 0; i < n; i++) {
+                int a = key[i] & 0xff;
+                int b = o.key[i] & 0xff;
+                if (a != b)
+                    return a - b;
+            }
+            return key.length - o.key.length;
+        }
+    }
+
+    /**
+     * The string data of the catalog. Each distinct string is stored only once, so keys
+     * shared by several locales and messages repeated in several places don't grow the catalog.
+     */
+    private static final class StringPool {
+
+        private final int start;
+
+        @Nonnull
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        @Nonnull
+        private final Map<String, Integer> offsets = new HashMap<String, Integer>();
+
+        StringPool(int start) {
+            this.start = start;
+        }
+
+        int offsetOf(@Nonnull byte[] bytes) {
+            // ISO-8859-1 maps each byte to a distinct char, so it works as a key for the bytes
+            String key = new String(bytes, ISO_8859_1);
+            Integer offset = offsets.get(key);
+            if (offset == null) {
+                offset = start + data.size();
+                data.write(bytes, 0, bytes.length);
+                offsets.put(key, offset);
+            }
+            return offset;
+        }
+
+        void writeTo(@Nonnull OutputStream out) throws IOException {
+            data.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import fi.evident.lokki.Messages.DefaultMessage;
+import fi.evident.lokki.Messages.Key;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * Immutable description of a single method of a Messages interface. Descriptors
+ * are resolved once when the Messages-object is created so that invoking the
+ * methods does not need to inspect the annotations again.
+ */
+final class MessageDescriptor {
+
+    @Nonnull
+    private final String key;
+
+    @Nullable
+    private final String defaultMessage;
+
+    private final int argumentCount;
+
+    @Nonnull
+    private final String missingMessage;
+
+    MessageDescriptor(@Nonnull String key, @Nullable String defaultMessage, int argumentCount) {
+        this.key = requireNonNull(key);
+        this.defaultMessage = defaultMessage;
+        this.argumentCount = argumentCount;
+        this.missingMessage = "???" + key + "???";
+    }
+
+    @Nonnull
+    static MessageDescriptor forMethod(@Nonnull Method method) {
+        Key keyAnnotation = method.getAnnotation(Key.class);
+        DefaultMessage defaultMessage = method.getAnnotation(DefaultMessage.class);
+
+        int parameterCount = method.getParameterTypes().length;
+
+        return new MessageDescriptor(
+                (keyAnnotation != null) ? keyAnnotation.value() : method.getName(),
+                (defaultMessage != null) ? defaultMessage.value() : null,
+                isAppendingMethod(method) ? parameterCount - 1 : parameterCount);
+    }
+
+    /**
+     * Returns true if given method writes the message into an {@link Appendable} passed
+     * as its last parameter, instead of returning it.
+     */
+    static boolean isAppendingMethod(@Nonnull Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+
+        return method.getReturnType() == void.class
+            && parameterTypes.length != 0
+            && Appendable.class.isAssignableFrom(parameterTypes[parameterTypes.length - 1]);
+    }
+
+    /**
+     * Returns the key used to look up the message from {@link MessageSource}.
+     */
+    @Nonnull
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the message to use if {@link MessageSource} does not have a message for the key.
+     */
+    @Nullable
+    String getDefaultMessage() {
+        return defaultMessage;
+    }
+
+    /**
+     * Returns the number of arguments used for formatting the message. For methods that write
+     * into an {@link Appendable}, the target is not included in the count.
+     */
+    int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * Returns the string that is returned when no message is found for this descriptor.
+     */
+    @Nonnull
+    String getMissingMessage() {
+        return missingMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageDescriptor[key=" + key + "]";
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed patterns, keyed by pattern and locale.
+ * <p>
+ * Simple patterns are compiled into {@link CompiledPattern}s, which can be used without
+ * locking. Other patterns, and arguments which need locale specific formatting, are
+ * formatted using {@link MessageFormat}.
+ * <p>
+ * The cache may be used concurrently from multiple threads. Since MessageFormat itself
+ * is not thread-safe, all formatting is done through the methods of this class, which take
+ * care of synchronizing on the cached format.
+ */
+final class MessageFormatCache {
+
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    @Nonnull
+    private final ConcurrentMap<Locale, ConcurrentMap<String, CachedFormat>> formatsByLocale =
+        new ConcurrentHashMap<Locale, ConcurrentMap<String, CachedFormat>>();
+
+    private final int maxSize;
+
+    @Nonnull
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Nonnull
+    private final AtomicLong hits = new AtomicLong();
+
+    @Nonnull
+    private final AtomicLong misses = new AtomicLong();
+
+    MessageFormatCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    MessageFormatCache(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("invalid maxSize: " + maxSize);
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Formats given arguments using the pattern and locale.
+     */
+    @Nonnull
+    String format(@Nonnull String pattern, @Nonnull Locale locale, @Nonnull Object[] args) {
+        return getFormat(pattern, locale).format(args);
+    }
+
+    /**
+     * Formats given arguments using the pattern and locale, appending the result to given target.
+     */
+    void formatTo(@Nonnull String pattern, @Nonnull Locale locale, @Nonnull Object[] args, @Nonnull Appendable out) throws IOException {
+        getFormat(pattern, locale).formatTo(args, out);
+    }
+
+    /**
+     * Parses given pattern for given locale and caches it, unless it's already cached.
+     *
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    void prepare(@Nonnull String pattern, @Nonnull Locale locale) {
+        getFormat(pattern, locale);
+    }
+
+    @Nonnull
+    private CachedFormat getFormat(@Nonnull String pattern, @Nonnull Locale locale) {
+        ConcurrentMap<String, CachedFormat> formats = formatsFor(locale);
+
+        CachedFormat format = formats.get(pattern);
+        if (format != null) {
+            hits.incrementAndGet();
+            return format;
+        }
+
+        misses.incrementAndGet();
+        format = new CachedFormat(pattern, locale);
+
+        CachedFormat old = formats.putIfAbsent(pattern, format);
+        if (old != null)
+            return old;
+
+        if (size.incrementAndGet() > maxSize)
+            evictOneFrom(formats);
+
+        return format;
+    }
+
+    @Nonnull
+    private ConcurrentMap<String, CachedFormat> formatsFor(@Nonnull Locale locale) {
+        ConcurrentMap<String, CachedFormat> formats = formatsByLocale.get(locale);
+        if (formats != null)
+            return formats;
+
+        formats = new ConcurrentHashMap<String, CachedFormat>();
+        ConcurrentMap<String, CachedFormat> old = formatsByLocale.putIfAbsent(locale, formats);
+        return (old != null) ? old : formats;
+    }
+
+    /**
+     * Evicts an arbitrary entry to keep the cache within its bounds. The entry is
+     * picked from the map that has just grown, so that we don't need to scan the
+     * maps of other locales.
+     */
+    private void evictOneFrom(@Nonnull ConcurrentMap<String, CachedFormat> formats) {
+        Iterator<String> it = formats.keySet().iterator();
+        if (it.hasNext()) {
+            String pattern = it.next();
+            if (formats.remove(pattern) != null)
+                size.decrementAndGet();
+        }
+    }
+
+    @Nonnull
+    CacheStatistics getStatistics() {
+        return new CacheStatistics(hits.get(), misses.get(), size.get());
+    }
+
+    /**
+     * A pattern parsed for a single locale. The MessageFormat of a compiled pattern is
+     * created only when it is first given arguments that the compiled pattern can't format.
+     */
+    private static final class CachedFormat {
+
+        @Nonnull
+        private final String pattern;
+
+        @Nonnull
+        private final Locale locale;
+
+        @Nullable
+        private final CompiledPattern compiled;
+
+        @Nullable
+        private MessageFormat messageFormat;
+
+        CachedFormat(@Nonnull String pattern, @Nonnull Locale locale) {
+            this.pattern = pattern;
+            this.locale = locale;
+            this.compiled = CompiledPattern.compile(pattern);
+
+            // Parse the pattern eagerly so that invalid patterns fail as early as before
+            if (compiled == null)
+                this.messageFormat = new MessageFormat(pattern, locale);
+        }
+
+        @Nonnull
+        String format(@Nonnull Object[] args) {
+            if (compiled != null && compiled.canFormat(args))
+                return compiled.format(args);
+
+            synchronized (this) {
+                return messageFormat().format(args);
+            }
+        }
+
+        void formatTo(@Nonnull Object[] args, @Nonnull Appendable out) throws IOException {
+            if (compiled != null && compiled.canFormat(args)) {
+                if (out instanceof StringBuilder)
+                    compiled.formatTo(args, (StringBuilder) out);
+                else
+                    compiled.formatTo(args, out);
+
+            } else if (out instanceof StringBuffer) {
+                synchronized (this) {
+                    messageFormat().format(args, (StringBuffer) out, null);
+                }
+            } else {
+                StringBuffer sb = new StringBuffer();
+                synchronized (this) {
+                    messageFormat().format(args, sb, null);
+                }
+                out.append(sb);
+            }
+        }
+
+        /**
+         * Returns the MessageFormat for this pattern. Must be called while holding the lock.
+         */
+        @Nonnull
+        private MessageFormat messageFormat() {
+            if (messageFormat == null)
+                messageFormat = new MessageFormat(pattern, locale);
+            return messageFormat;
+        }
+    }
+}
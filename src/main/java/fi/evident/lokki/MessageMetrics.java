@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * Collects usage metrics of messages: how many times each message was looked up in each
+ * locale, how many of the lookups fell back to the default message or found no message
+ * at all, and how much time was spent formatting the message.
+ * <p>
+ * The metrics are collected by the Messages-objects of providers returned by
+ * {@link MessagesProvider#withMetrics(MessageMetrics)}. The counters are striped once
+ * concurrent threads contend on them, and providers without metrics don't pay for them
+ * at all.
+ */
+public final class MessageMetrics {
+
+    @Nonnull
+    private final ConcurrentMap<String, KeyMetrics> keys = new ConcurrentHashMap<String, KeyMetrics>();
+
+    /**
+     * Returns the counters of given message, creating them if needed.
+     */
+    @Nonnull
+    KeyMetrics forKey(@Nonnull Class<?> messagesClass, @Nonnull String key) {
+        String id = messagesClass.getName() + '#' + key;
+
+        KeyMetrics metrics = keys.get(id);
+        if (metrics == null) {
+            metrics = new KeyMetrics(messagesClass.getName(), key);
+            KeyMetrics old = keys.putIfAbsent(id, metrics);
+            if (old != null)
+                metrics = old;
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the current metrics of all messages that have been looked up, one entry for
+     * each combination of interface, key and locale. The counters are read while they may
+     * be updated, so the entries are not an atomic snapshot of all of them.
+     */
+    @Nonnull
+    public List<Entry> snapshot() {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (KeyMetrics metrics : keys.values())
+            for (Map.Entry<Locale, StripedCounters> entry : metrics.getCountersByLocale().entrySet())
+                entries.add(new Entry(metrics.getInterfaceName(), metrics.getKey(), entry.getKey(), entry.getValue()));
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Immutable metrics of a single message in a single locale.
+     */
+    public static final class Entry {
+
+        @Nonnull
+        private final String interfaceName;
+
+        @Nonnull
+        private final String key;
+
+        @Nonnull
+        private final Locale locale;
+
+        private final long lookupCount;
+        private final long defaultMessageCount;
+        private final long missingCount;
+        private final long formatCount;
+        private final long formatNanos;
+
+        Entry(@Nonnull String interfaceName, @Nonnull String key, @Nonnull Locale locale, @Nonnull StripedCounters counters) {
+            this.interfaceName = requireNonNull(interfaceName);
+            this.key = requireNonNull(key);
+            this.locale = requireNonNull(locale);
+            this.lookupCount = counters.sum(KeyMetrics.LOOKUPS);
+            this.defaultMessageCount = counters.sum(KeyMetrics.DEFAULT_MESSAGES);
+            this.missingCount = counters.sum(KeyMetrics.MISSING_MESSAGES);
+            this.formatCount = counters.sum(KeyMetrics.FORMATS);
+            this.formatNanos = counters.sum(KeyMetrics.FORMAT_NANOS);
+        }
+
+        /**
+         * Returns the fully qualified name of the Messages-interface.
+         */
+        @Nonnull
+        public String getInterfaceName() {
+            return interfaceName;
+        }
+
+        @Nonnull
+        public String getKey() {
+            return key;
+        }
+
+        @Nonnull
+        public Locale getLocale() {
+            return locale;
+        }
+
+        /**
+         * Returns the number of times the message was looked up.
+         */
+        public long getLookupCount() {
+            return lookupCount;
+        }
+
+        /**
+         * Returns the number of lookups that didn't find the message and used the default message.
+         */
+        public long getDefaultMessageCount() {
+            return defaultMessageCount;
+        }
+
+        /**
+         * Returns the number of lookups that found neither the message nor a default message.
+         */
+        public long getMissingCount() {
+            return missingCount;
+        }
+
+        /**
+         * Returns the number of times the message was formatted with arguments. Messages
+         * without arguments are never formatted.
+         */
+        public long getFormatCount() {
+            return formatCount;
+        }
+
+        /**
+         * Returns the total time spent formatting the message, in nanoseconds.
+         */
+        public long getFormatNanos() {
+            return formatNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "MessageMetrics.Entry[interface=" + interfaceName + ", key=" + key + ", locale=" + locale
+                + ", lookups=" + lookupCount + ", defaults=" + defaultMessageCount + ", missing=" + missingCount
+                + ", formats=" + formatCount + ", formatNanos=" + formatNanos + "]";
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Locale;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * Resolves the messages described by {@link MessageDescriptor}s using a {@link MessageSource}
+ * and formats them using the locale of a {@link LocaleProvider}.
+ * <p>
+ * If the resolver has a {@link MessageTable}, each message is assigned a slot in the table
+ * when it is bound and looked up by the slot. If the resolver has a {@link LocaleIndex}, the
+ * messages are resolved for all supported locales when they are bound and looking them up is
+ * just an array access.
+ * <p>
+ * If the resolver has {@link TenantOverlays}, the overlay of the current tenant is consulted
+ * before the shared messages.
+ */
+final class MessageResolver {
+
+    @Nonnull
+    private final MessageSource messageSource;
+
+    @Nonnull
+    private final LocaleProvider localeProvider;
+
+    @Nonnull
+    private final MessageFormatCache formatCache;
+
+    @Nullable
+    private final MessageTable table;
+
+    @Nullable
+    private final LocaleIndex localeIndex;
+
+    @Nullable
+    private final MessageMetrics metrics;
+
+    @Nullable
+    private final TenantOverlays overlays;
+
+    @Nonnull
+    private final Class<?> messagesClass;
+
+    MessageResolver(@Nonnull MessageSource messageSource,
+                    @Nonnull LocaleProvider localeProvider,
+                    @Nonnull MessageFormatCache formatCache,
+                    @Nullable MessageMetrics metrics,
+                    @Nullable TenantOverlays overlays,
+                    @Nonnull Class<?> messagesClass) {
+        this(messageSource, localeProvider, formatCache, null, null, metrics, overlays, messagesClass);
+    }
+
+    MessageResolver(@Nonnull MessageTable table,
+                    @Nonnull LocaleProvider localeProvider,
+                    @Nonnull MessageFormatCache formatCache,
+                    @Nullable MessageMetrics metrics,
+                    @Nullable TenantOverlays overlays,
+                    @Nonnull Class<?> messagesClass) {
+        this(table.getSource(), localeProvider, formatCache, table, null, metrics, overlays, messagesClass);
+    }
+
+    MessageResolver(@Nonnull ResourceBundleMessageSource messageSource,
+                    @Nonnull LocaleProvider localeProvider,
+                    @Nonnull MessageFormatCache formatCache,
+                    @Nonnull LocaleIndex localeIndex,
+                    @Nullable MessageMetrics metrics,
+                    @Nullable TenantOverlays overlays,
+                    @Nonnull Class<?> messagesClass) {
+        this(messageSource, localeProvider, formatCache, null, requireNonNull(localeIndex), metrics, overlays, messagesClass);
+    }
+
+    private MessageResolver(@Nonnull MessageSource messageSource,
+                            @Nonnull LocaleProvider localeProvider,
+                            @Nonnull MessageFormatCache formatCache,
+                            @Nullable MessageTable table,
+                            @Nullable LocaleIndex localeIndex,
+                            @Nullable MessageMetrics metrics,
+                            @Nullable TenantOverlays overlays,
+                            @Nonnull Class<?> messagesClass) {
+        this.messageSource = requireNonNull(messageSource);
+        this.localeProvider = requireNonNull(localeProvider);
+        this.formatCache = requireNonNull(formatCache);
+        this.table = table;
+        this.localeIndex = localeIndex;
+        this.metrics = metrics;
+        this.overlays = overlays;
+        this.messagesClass = requireNonNull(messagesClass);
+    }
+
+    /**
+     * Binds given message to this resolver.
+     */
+    @Nonnull
+    BoundMessage bind(@Nonnull MessageDescriptor descriptor) {
+        KeyMetrics keyMetrics = (metrics != null) ? metrics.forKey(messagesClass, descriptor.getKey()) : null;
+
+        if (localeIndex != null)
+            return new BoundMessage(descriptor, this, resolveMessages(descriptor, localeIndex), BoundMessage.NO_SLOT, keyMetrics);
+        else if (table != null)
+            return new BoundMessage(descriptor, this, null, table.slotOf(descriptor.getKey()), keyMetrics);
+        else
+            return new BoundMessage(descriptor, this, null, BoundMessage.NO_SLOT, keyMetrics);
+    }
+
+    /**
+     * Formats given message.
+     */
+    @Nonnull
+    String format(@Nonnull BoundMessage message, @Nullable Object[] args) {
+        MessageDescriptor descriptor = message.getDescriptor();
+        int index = currentLocaleIndex(message);
+        Locale locale = currentLocale(index);
+        String pattern = resolvePattern(message, index, locale);
+
+        if (pattern == null)
+            return descriptor.getMissingMessage();
+        else if (descriptor.getArgumentCount() == 0)
+            return pattern;
+
+        Object[] arguments = (args != null) ? args : new Object[0];
+        KeyMetrics keyMetrics = message.getMetrics();
+        if (keyMetrics == null)
+            return formatCache.format(pattern, locale, arguments);
+
+        long start = System.nanoTime();
+        String result = formatCache.format(pattern, locale, arguments);
+        keyMetrics.recordFormat(locale, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Formats given message, appending the result to given target.
+     */
+    void formatTo(@Nonnull BoundMessage message, @Nonnull Appendable out, @Nullable Object[] args) throws IOException {
+        MessageDescriptor descriptor = message.getDescriptor();
+        int index = currentLocaleIndex(message);
+        Locale locale = currentLocale(index);
+        String pattern = resolvePattern(message, index, locale);
+
+        if (pattern == null) {
+            out.append(descriptor.getMissingMessage());
+        } else if (descriptor.getArgumentCount() == 0) {
+            out.append(pattern);
+        } else {
+            Object[] arguments = (args != null) ? args : new Object[0];
+            KeyMetrics keyMetrics = message.getMetrics();
+            if (keyMetrics == null) {
+                formatCache.formatTo(pattern, locale, arguments, out);
+            } else {
+                long start = System.nanoTime();
+                formatCache.formatTo(pattern, locale, arguments, out);
+                keyMetrics.recordFormat(locale, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the current locale in the locale index, or -1 if the message is
+     * not resolved for a fixed set of locales. If there's only a single locale, as with
+     * locale-bound views, the locale provider does not need to be called at all.
+     */
+    @SuppressWarnings("ConstantConditions")
+    private int currentLocaleIndex(@Nonnull BoundMessage message) {
+        if (message.getPatterns() == null)
+            return -1;
+
+        return (localeIndex.size() == 1) ? 0 : localeIndex.indexOf(localeProvider.getLocale());
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @Nonnull
+    private Locale currentLocale(int localeIndex) {
+        return (localeIndex != -1) ? this.localeIndex.getLocale(localeIndex) : localeProvider.getLocale();
+    }
+
+    /**
+     * Returns the pattern of given message in given locale, falling back to the default
+     * message if the message is not found. Messages overridden by the current tenant take
+     * precedence over all other messages.
+     */
+    @Nullable
+    private String resolvePattern(@Nonnull BoundMessage message, int localeIndex, @Nonnull Locale locale) {
+        MessageDescriptor descriptor = message.getDescriptor();
+
+        String resolved = (overlays != null) ? overlays.getMessage(messagesClass, descriptor.getKey(), locale) : null;
+        if (resolved == null)
+            resolved = resolveSharedMessage(message, localeIndex, locale);
+
+        String pattern = (resolved != null) ? resolved : descriptor.getDefaultMessage();
+
+        KeyMetrics keyMetrics = message.getMetrics();
+        if (keyMetrics != null)
+            keyMetrics.recordLookup(locale, resolved == null && pattern != null, pattern == null);
+
+        return pattern;
+    }
+
+    /**
+     * Returns the message shared by all tenants, or null if the message is not found.
+     */
+    @Nullable
+    private String resolveSharedMessage(@Nonnull BoundMessage message, int localeIndex, @Nonnull Locale locale) {
+        int slot = message.getSlot();
+
+        if (localeIndex != -1)
+            //noinspection ConstantConditions
+            return message.getPatterns()[localeIndex];
+        else if (slot != BoundMessage.NO_SLOT)
+            //noinspection ConstantConditions
+            return table.getMessage(slot, locale);
+        else
+            return messageSource.getMessage(message.getDescriptor().getKey());
+    }
+
+    /**
+     * Returns the messages of given descriptor for all locales of the index. Missing messages
+     * are left null so that falling back to the default message can be tracked on lookup.
+     */
+    @Nonnull
+    private String[] resolveMessages(@Nonnull MessageDescriptor descriptor, @Nonnull LocaleIndex localeIndex) {
+        ResourceBundleMessageSource source = (ResourceBundleMessageSource) messageSource;
+
+        String[] messages = new String[localeIndex.size()];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = source.getMessage(descriptor.getKey(), localeIndex.getLocale(i));
+        return messages;
+    }
+}
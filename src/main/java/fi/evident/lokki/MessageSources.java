@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utility methods for {@link MessageSource}s.
+ */
+public final class MessageSources {
+
+    private MessageSources() { }
+
+    /**
+     * Returns the messages for given keys from given source. Keys whose message is not found
+     * are not included in the returned map.
+     * <p>
+     * If the source is a {@link BatchMessageSource}, the whole batch is looked up in one
+     * call, otherwise each key is looked up separately.
+     */
+    @Nonnull
+    public static Map<String, String> getMessages(@Nonnull MessageSource source, @Nonnull Collection<String> keys) {
+        if (source instanceof BatchMessageSource)
+            return ((BatchMessageSource) source).getMessages(keys);
+
+        Map<String, String> messages = new HashMap<String, String>(keys.size() * 2);
+        for (String key : keys) {
+            String message = source.getMessage(key);
+            if (message != null)
+                messages.put(key, message);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * Per-locale tables of the messages of a single Messages-interface.
+ * <p>
+ * Each key is assigned a dense slot when a message is bound, which makes the slots a
+ * minimal perfect hash of the keys of the interface. The messages of each locale are then
+ * stored in an array indexed by the slot, so a lookup does not need to hash or compare the
+ * key. The arrays are built from the {@link ResourceBundleMessageSource} when a locale is
+ * first used. Keys bound after the array of a locale has been built cause it to be rebuilt.
+ * <p>
+ * The arrays of all locales are published as a single immutable {@link Snapshot}. Each
+ * reload starts a new generation, and arrays built from an older generation are never
+ * published, so a load racing with a reload can't bring back the old messages.
+ */
+final class MessageTable {
+
+    @Nonnull
+    private final ResourceBundleMessageSource source;
+
+    @Nonnull
+    private final Map<String, Integer> slotsByKey = new HashMap<String, Integer>();
+
+    /** Copy-on-write array of keys indexed by their slots, guarded by the lock of this table */
+    @Nonnull
+    private volatile String[] keys = new String[0];
+
+    /** Messages of all loaded locales, replaced under the lock of this table */
+    @Nonnull
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.<Locale, String[]>emptyMap());
+
+    MessageTable(@Nonnull ResourceBundleMessageSource source) {
+        this.source = requireNonNull(source);
+    }
+
+    @Nonnull
+    ResourceBundleMessageSource getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the slot of given key, assigning a new one if needed.
+     */
+    synchronized int slotOf(@Nonnull String key) {
+        Integer slot = slotsByKey.get(key);
+        if (slot != null)
+            return slot;
+
+        String[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+        newKeys[keys.length] = key;
+        keys = newKeys;
+
+        slotsByKey.put(key, keys.length - 1);
+        return keys.length - 1;
+    }
+
+    /**
+     * Returns the message in given slot for given locale, or null if the message is not found.
+     */
+    @Nullable
+    String getMessage(int slot, @Nonnull Locale locale) {
+        String[] messages = messagesFor(locale);
+        if (slot >= messages.length)
+            messages = loadMessages(locale);
+
+        return messages[slot];
+    }
+
+    /**
+     * Builds the table of given locale for the keys bound so far, unless it has already been built.
+     */
+    void preload(@Nonnull Locale locale) {
+        if (messagesFor(locale).length < keys.length)
+            loadMessages(locale);
+    }
+
+    /**
+     * Discards the messages of all locales, so that they are built again from the source when
+     * next used. The source itself is not reloaded. The slots of the keys are kept.
+     */
+    synchronized void reload() {
+        snapshot = new Snapshot(snapshot.generation + 1, Collections.<Locale, String[]>emptyMap());
+    }
+
+    /**
+     * Returns the published messages of given locale, or an empty array if they are not loaded.
+     */
+    @Nonnull
+    private String[] messagesFor(@Nonnull Locale locale) {
+        String[] messages = snapshot.messagesByLocale.get(locale);
+        return (messages != null) ? messages : NO_MESSAGES;
+    }
+
+    @Nonnull
+    private String[] loadMessages(@Nonnull Locale locale) {
+        int generation = snapshot.generation;
+        String[] keys = this.keys;
+
+        String[] messages = new String[keys.length];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = source.getMessage(keys[i], locale);
+
+        publish(generation, locale, messages);
+        return messages;
+    }
+
+    /**
+     * Publishes the messages of given locale, unless the table has been reloaded after they were
+     * loaded or a table built from more keys has already been published.
+     */
+    private synchronized void publish(int generation, @Nonnull Locale locale, @Nonnull String[] messages) {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot.generation != generation)
+            return;
+
+        String[] old = snapshot.messagesByLocale.get(locale);
+        if (old != null && old.length >= messages.length)
+            return;
+
+        Map<Locale, String[]> messagesByLocale = new HashMap<Locale, String[]>(snapshot.messagesByLocale);
+        messagesByLocale.put(locale, messages);
+        this.snapshot = new Snapshot(generation, messagesByLocale);
+    }
+
+    private static final String[] NO_MESSAGES = new String[0];
+
+    private static final class Snapshot {
+        final int generation;
+
+        @Nonnull
+        final Map<Locale, String[]> messagesByLocale;
+
+        Snapshot(int generation, @Nonnull Map<Locale, String[]> messagesByLocale) {
+            this.generation = generation;
+            this.messagesByLocale = messagesByLocale;
+        }
+    }
+}
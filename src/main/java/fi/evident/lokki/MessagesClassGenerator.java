@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Generates concrete implementations for Messages-interfaces so that calling a message
+ * does not need to go through {@link java.lang.reflect.Proxy} and its {@code InvocationHandler}.
+ * <p>
+ * Each generated class has a final field of type {@link BoundMessage} for every method of the
+ * interface and the methods simply call the corresponding field, which the JIT can inline.
+ * Generation is not possible for interfaces that are not public, nor in environments where
+ * defining new classes is not allowed. In these cases {@link #instantiate} returns {@code null}
+ * and the caller is expected to fall back to a proxy.
+ */
+final class MessagesClassGenerator {
+
+    static final String CLASS_NAME_SUFFIX = "$$Lokki";
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String BOUND_MESSAGE = "fi/evident/lokki/BoundMessage";
+    private static final String BOUND_MESSAGE_DESCRIPTOR = "L" + BOUND_MESSAGE + ";";
+    private static final String CONSTRUCTOR_DESCRIPTOR = "([" + BOUND_MESSAGE_DESCRIPTOR + ")V";
+
+    private static final int CLASS_FILE_VERSION = 50;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int FLOAD = 0x17;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int AALOAD = 0x32;
+    private static final int AASTORE = 0x53;
+    private static final int DUP = 0x59;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int ANEWARRAY = 0xbd;
+
+    /**
+     * Cache of generated classes. The generated classes are only weakly referenced, because
+     * they strongly refer to the interfaces they implement and would otherwise prevent them
+     * from being unloaded.
+     */
+    private static final Map<Class<?>, WeakReference<Class<?>>> generatedClasses =
+        new WeakHashMap<Class<?>, WeakReference<Class<?>>>();
+
+    private MessagesClassGenerator() { }
+
+    /**
+     * Instantiates a generated implementation of given interface, or returns null if
+     * the implementation can't be generated.
+     *
+     * @param methods the methods of the interface, as returned by {@link MessagesMetadata#getMethods()}
+     * @param messages bound messages corresponding to the methods
+     */
+    @Nullable
+    static <T extends Messages> T instantiate(@Nonnull Class<T> messagesClass,
+                                              @Nonnull List<Method> methods,
+                                              @Nonnull BoundMessage[] messages) {
+        if (!Modifier.isPublic(messagesClass.getModifiers()))
+            return null;
+
+        try {
+            Class<?> cl = generatedClassFor(messagesClass, methods);
+            Constructor<?> constructor = cl.getConstructor(BoundMessage[].class);
+            return messagesClass.cast(constructor.newInstance(new Object[] { messages }));
+
+        } catch (SecurityException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (InstantiationException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    @Nonnull
+    private static Class<?> generatedClassFor(@Nonnull Class<?> messagesClass, @Nonnull List<Method> methods) {
+        synchronized (generatedClasses) {
+            WeakReference<Class<?>> ref = generatedClasses.get(messagesClass);
+            Class<?> cl = (ref != null) ? ref.get() : null;
+            if (cl == null) {
+                String className = messagesClass.getName() + CLASS_NAME_SUFFIX;
+                byte[] bytes = generateClass(className, messagesClass, methods);
+
+                cl = new GeneratedClassLoader(messagesClass.getClassLoader()).define(className, bytes);
+                generatedClasses.put(messagesClass, new WeakReference<Class<?>>(cl));
+            }
+            return cl;
+        }
+    }
+
+    /**
+     * Generates the bytecode of a class which implements given interface.
+     */
+    @Nonnull
+    static byte[] generateClass(@Nonnull String className, @Nonnull Class<?> messagesClass, @Nonnull List<Method> methods) {
+        ConstantPool pool = new ConstantPool();
+        String thisClass = internalName(className);
+
+        try {
+            int thisClassIndex = pool.classRef(thisClass);
+            int superClassIndex = pool.classRef(OBJECT);
+            int interfaceIndex = pool.classRef(internalName(messagesClass.getName()));
+
+            // Generate members before writing anything so that the constant pool is complete
+            ByteArrayOutputStream members = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(members);
+
+            out.writeShort(methods.size());
+            for (int i = 0; i < methods.size(); i++) {
+                out.writeShort(ACC_PRIVATE | ACC_FINAL);
+                out.writeShort(pool.utf8(fieldName(i)));
+                out.writeShort(pool.utf8(BOUND_MESSAGE_DESCRIPTOR));
+                out.writeShort(0);
+            }
+
+            out.writeShort(methods.size() + 1);
+            writeConstructor(out, pool, thisClass, methods.size());
+            for (int i = 0; i < methods.size(); i++)
+                writeMethod(out, pool, thisClass, i, methods.get(i));
+            out.writeShort(0);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream classOut = new DataOutputStream(bytes);
+            classOut.writeInt(0xCAFEBABE);
+            classOut.writeShort(0);
+            classOut.writeShort(CLASS_FILE_VERSION);
+            pool.writeTo(classOut);
+            classOut.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            classOut.writeShort(thisClassIndex);
+            classOut.writeShort(superClassIndex);
+            classOut.writeShort(1);
+            classOut.writeShort(interfaceIndex);
+            out.flush();
+            members.writeTo(classOut);
+            classOut.flush();
+
+            return bytes.toByteArray();
+
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void writeConstructor(@Nonnull DataOutputStream out, @Nonnull ConstantPool pool,
+                                         @Nonnull String thisClass, int fieldCount) throws IOException {
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(INVOKESPECIAL, pool.methodRef(OBJECT, "<init>", "()V"));
+        for (int i = 0; i < fieldCount; i++) {
+            code.op(ALOAD_0);
+            code.op(ALOAD_1);
+            code.pushInt(i);
+            code.op(AALOAD);
+            code.op(PUTFIELD, pool.fieldRef(thisClass, fieldName(i), BOUND_MESSAGE_DESCRIPTOR));
+        }
+        code.op(RETURN);
+
+        writeMethodInfo(out, pool, "<init>", CONSTRUCTOR_DESCRIPTOR, code, 3, 2);
+    }
+
+    private static void writeMethod(@Nonnull DataOutputStream out, @Nonnull ConstantPool pool,
+                                    @Nonnull String thisClass, int index, @Nonnull Method method) throws IOException {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        boolean appending = MessageDescriptor.isAppendingMethod(method);
+        int argumentCount = appending ? parameterTypes.length - 1 : parameterTypes.length;
+
+        int[] slots = new int[parameterTypes.length];
+        int locals = 1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            slots[i] = locals;
+            locals += (parameterTypes[i] == long.class || parameterTypes[i] == double.class) ? 2 : 1;
+        }
+
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(GETFIELD, pool.fieldRef(thisClass, fieldName(index), BOUND_MESSAGE_DESCRIPTOR));
+
+        String targetDescriptor = "";
+        if (appending) {
+            Class<?> targetType = parameterTypes[argumentCount];
+            code.load(targetType, slots[argumentCount]);
+            targetDescriptor = (targetType == StringBuilder.class) ? "Ljava/lang/StringBuilder;" : "Ljava/lang/Appendable;";
+        }
+
+        String argumentsDescriptor = "";
+        if (argumentCount != 0) {
+            code.pushInt(argumentCount);
+            code.op(ANEWARRAY, pool.classRef(OBJECT));
+            for (int i = 0; i < argumentCount; i++) {
+                Class<?> type = parameterTypes[i];
+                code.op(DUP);
+                code.pushInt(i);
+                code.load(type, slots[i]);
+                if (type.isPrimitive())
+                    code.op(INVOKESTATIC, boxingMethodRef(pool, type));
+                code.op(AASTORE);
+            }
+            argumentsDescriptor = "[Ljava/lang/Object;";
+        }
+
+        if (appending) {
+            code.op(INVOKEVIRTUAL, pool.methodRef(BOUND_MESSAGE, "formatTo", "(" + targetDescriptor + argumentsDescriptor + ")V"));
+            code.op(RETURN);
+        } else {
+            code.op(INVOKEVIRTUAL, pool.methodRef(BOUND_MESSAGE, "format", "(" + argumentsDescriptor + ")Ljava/lang/String;"));
+            code.op(ARETURN);
+        }
+
+        // receiver, target, array, array, index, and a value which may take two slots
+        int maxStack = (appending ? 2 : 1) + (argumentCount != 0 ? 5 : 0);
+
+        writeMethodInfo(out, pool, method.getName(), methodDescriptor(method), code, maxStack, locals);
+    }
+
+    private static void writeMethodInfo(@Nonnull DataOutputStream out, @Nonnull ConstantPool pool,
+                                        @Nonnull String name, @Nonnull String descriptor, @Nonnull Code code,
+                                        int maxStack, int maxLocals) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(1);
+
+        out.writeShort(pool.utf8("Code"));
+        out.writeInt(12 + code.size());
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.size());
+        code.writeTo(out);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private static int boxingMethodRef(@Nonnull ConstantPool pool, @Nonnull Class<?> type) throws IOException {
+        String wrapper;
+        if (type == boolean.class)      wrapper = "java/lang/Boolean";
+        else if (type == byte.class)    wrapper = "java/lang/Byte";
+        else if (type == char.class)    wrapper = "java/lang/Character";
+        else if (type == short.class)   wrapper = "java/lang/Short";
+        else if (type == int.class)     wrapper = "java/lang/Integer";
+        else if (type == long.class)    wrapper = "java/lang/Long";
+        else if (type == float.class)   wrapper = "java/lang/Float";
+        else if (type == double.class)  wrapper = "java/lang/Double";
+        else throw new IllegalArgumentException("not a primitive type: " + type);
+
+        return pool.methodRef(wrapper, "valueOf", "(" + typeDescriptor(type) + ")L" + wrapper + ";");
+    }
+
+    @Nonnull
+    private static String fieldName(int index) {
+        return "message" + index;
+    }
+
+    @Nonnull
+    private static String internalName(@Nonnull String className) {
+        return className.replace('.', '/');
+    }
+
+    @Nonnull
+    private static String methodDescriptor(@Nonnull Method method) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('(');
+        for (Class<?> type : method.getParameterTypes())
+            sb.append(typeDescriptor(type));
+        sb.append(')');
+        sb.append(typeDescriptor(method.getReturnType()));
+        return sb.toString();
+    }
+
+    @Nonnull
+    private static String typeDescriptor(@Nonnull Class<?> type) {
+        if (type == void.class)         return "V";
+        else if (type == boolean.class) return "Z";
+        else if (type == byte.class)    return "B";
+        else if (type == char.class)    return "C";
+        else if (type == short.class)   return "S";
+        else if (type == int.class)     return "I";
+        else if (type == long.class)    return "J";
+        else if (type == float.class)   return "F";
+        else if (type == double.class)  return "D";
+        else if (type.isArray())        return internalName(type.getName());
+        else                            return "L" + internalName(type.getName()) + ";";
+    }
+
+    /**
+     * Bytecode of a single method.
+     */
+    private static final class Code {
+
+        @Nonnull
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        void op(int opcode, int constantIndex) {
+            bytes.write(opcode);
+            bytes.write(constantIndex >> 8);
+            bytes.write(constantIndex);
+        }
+
+        void pushInt(int value) {
+            if (value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                bytes.write(value);
+            } else {
+                op(SIPUSH, value);
+            }
+        }
+
+        void load(@Nonnull Class<?> type, int local) {
+            if (type == long.class)
+                op(LLOAD);
+            else if (type == float.class)
+                op(FLOAD);
+            else if (type == double.class)
+                op(DLOAD);
+            else if (type.isPrimitive())
+                op(ILOAD);
+            else
+                op(ALOAD);
+            bytes.write(local);
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        void writeTo(@Nonnull DataOutputStream out) throws IOException {
+            bytes.writeTo(out);
+        }
+    }
+
+    /**
+     * Constant pool of the class being generated.
+     */
+    private static final class ConstantPool {
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_FIELDREF = 9;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        @Nonnull
+        private final Map<String, Integer> indices = new HashMap<String, Integer>();
+
+        @Nonnull
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Nonnull
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private int nextIndex = 1;
+
+        int utf8(@Nonnull String value) throws IOException {
+            Integer index = indices.get("U" + value);
+            if (index != null) return index;
+
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+            return register("U" + value);
+        }
+
+        int classRef(@Nonnull String internalName) throws IOException {
+            Integer index = indices.get("C" + internalName);
+            if (index != null) return index;
+
+            int nameIndex = utf8(internalName);
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(nameIndex);
+            return register("C" + internalName);
+        }
+
+        int fieldRef(@Nonnull String owner, @Nonnull String name, @Nonnull String descriptor) throws IOException {
+            return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+        }
+
+        int methodRef(@Nonnull String owner, @Nonnull String name, @Nonnull String descriptor) throws IOException {
+            return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, @Nonnull String owner, @Nonnull String name, @Nonnull String descriptor) throws IOException {
+            String key = tag + owner + "." + name + ":" + descriptor;
+            Integer index = indices.get(key);
+            if (index != null) return index;
+
+            int classIndex = classRef(owner);
+            int nameAndTypeIndex = nameAndType(name, descriptor);
+            out.writeByte(tag);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+            return register(key);
+        }
+
+        private int nameAndType(@Nonnull String name, @Nonnull String descriptor) throws IOException {
+            String key = "N" + name + ":" + descriptor;
+            Integer index = indices.get(key);
+            if (index != null) return index;
+
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            return register(key);
+        }
+
+        private int register(@Nonnull String key) {
+            int index = nextIndex++;
+            indices.put(key, index);
+            return index;
+        }
+
+        void writeTo(@Nonnull DataOutputStream classOut) throws IOException {
+            out.flush();
+            classOut.writeShort(nextIndex);
+            bytes.writeTo(classOut);
+        }
+    }
+
+    private static final class GeneratedClassLoader extends ClassLoader {
+
+        GeneratedClassLoader(@Nullable ClassLoader parent) {
+            super(parent);
+        }
+
+        @Nonnull
+        Class<?> define(@Nonnull String name, @Nonnull byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
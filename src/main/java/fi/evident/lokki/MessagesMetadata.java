@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Verified description of a Messages-interface. The metadata is computed once for each
+ * interface and shared by all providers, so that creating Messages-objects does not
+ * need to scan the methods of the interface again.
+ */
+final class MessagesMetadata {
+
+    @Nonnull
+    private static final ClassCache<MessagesMetadata> cache = new ClassCache<MessagesMetadata>() {
+        @Nonnull
+        @Override
+        protected MessagesMetadata computeValue(@Nonnull Class<?> cl) {
+            return new MessagesMetadata(cl.asSubclass(Messages.class));
+        }
+    };
+
+    @Nonnull
+    private final List<Method> methods;
+
+    @Nonnull
+    private final MessageDescriptor[] descriptors;
+
+    @Nonnull
+    private final List<MessageDescriptor> exportedDescriptors;
+
+    private MessagesMetadata(@Nonnull Class<? extends Messages> messagesClass) {
+        verifyMethods(messagesClass);
+
+        this.methods = Collections.unmodifiableList(messageMethodsOf(messagesClass));
+        this.descriptors = new MessageDescriptor[methods.size()];
+        for (int i = 0; i < descriptors.length; i++)
+            descriptors[i] = MessageDescriptor.forMethod(methods.get(i));
+        this.exportedDescriptors = Collections.unmodifiableList(exportedDescriptors(descriptors));
+    }
+
+    /**
+     * Returns the metadata of given interface.
+     *
+     * @throws IllegalArgumentException if the interface has invalid method definitions
+     */
+    @Nonnull
+    static MessagesMetadata of(@Nonnull Class<? extends Messages> messagesClass) {
+        return cache.get(messagesClass);
+    }
+
+    /**
+     * Returns the methods of the interface in a stable order. If an interface overrides
+     * methods of its parents, only the most specific method is returned.
+     */
+    @Nonnull
+    List<Method> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Returns the descriptors of the messages, in the order of {@link #getMethods()}.
+     */
+    @Nonnull
+    List<MessageDescriptor> getDescriptors() {
+        return Collections.unmodifiableList(Arrays.asList(descriptors));
+    }
+
+    /**
+     * Returns the descriptors in the order of their keys, so that exported messages don't
+     * depend on the order of methods. Each key is included once, even if multiple methods
+     * use it, preferring a method with a default message.
+     */
+    @Nonnull
+    List<MessageDescriptor> getExportedDescriptors() {
+        return exportedDescriptors;
+    }
+
+    /**
+     * Returns messages for all the methods, in the order of {@link #getMethods()}.
+     */
+    @Nonnull
+    BoundMessage[] bind(@Nonnull MessageResolver resolver) {
+        BoundMessage[] messages = new BoundMessage[descriptors.length];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = resolver.bind(descriptors[i]);
+        return messages;
+    }
+
+    @Nonnull
+    static String signature(@Nonnull Method method) {
+        return method.getName() + Arrays.toString(method.getParameterTypes());
+    }
+
+    @Nonnull
+    private static List<MessageDescriptor> exportedDescriptors(@Nonnull MessageDescriptor[] descriptors) {
+        Map<String, MessageDescriptor> descriptorsByKey = new TreeMap<String, MessageDescriptor>();
+        for (MessageDescriptor descriptor : descriptors) {
+            MessageDescriptor existing = descriptorsByKey.get(descriptor.getKey());
+            if (existing == null || (existing.getDefaultMessage() == null && descriptor.getDefaultMessage() != null))
+                descriptorsByKey.put(descriptor.getKey(), descriptor);
+        }
+        return new ArrayList<MessageDescriptor>(descriptorsByKey.values());
+    }
+
+    @Nonnull
+    private static List<Method> messageMethodsOf(@Nonnull Class<? extends Messages> messagesClass) {
+        Map<String, Method> methodsBySignature = new TreeMap<String, Method>();
+
+        for (Method method : messagesClass.getMethods()) {
+            String signature = signature(method);
+            Method existing = methodsBySignature.get(signature);
+            if (existing == null || existing.getDeclaringClass().isAssignableFrom(method.getDeclaringClass()))
+                methodsBySignature.put(signature, method);
+        }
+
+        return new ArrayList<Method>(methodsBySignature.values());
+    }
+
+    private static void verifyMethods(@Nonnull Class<? extends Messages> messagesClass) {
+        for (Method method : messagesClass.getMethods())
+            if (!isValidMethod(method))
+                throw new IllegalArgumentException("invalid method definition: " + method);
+    }
+
+    /**
+     * Methods must either return String or write into a StringBuilder or an Appendable passed
+     * as their last parameter. Since Appendables other than StringBuilder may throw IOException,
+     * methods taking them must declare it.
+     */
+    private static boolean isValidMethod(@Nonnull Method method) {
+        if (method.getReturnType() == String.class)
+            return true;
+
+        if (!MessageDescriptor.isAppendingMethod(method))
+            return false;
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        return parameterTypes[parameterTypes.length - 1] == StringBuilder.class || declaresIOException(method);
+    }
+
+    private static boolean declaresIOException(@Nonnull Method method) {
+        for (Class<?> exceptionType : method.getExceptionTypes())
+            if (exceptionType.isAssignableFrom(IOException.class))
+                return true;
+
+        return false;
+    }
+}
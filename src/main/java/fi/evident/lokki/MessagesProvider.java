@@ -22,20 +22,20 @@
 
 package fi.evident.lokki;
 
-import fi.evident.lokki.Messages.DefaultMessage;
-import fi.evident.lokki.Messages.Key;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.*;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
+import java.math.BigInteger;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static fi.evident.lokki.Utils.proxy;
 import static fi.evident.lokki.Utils.requireNonNull;
-import static java.text.MessageFormat.format;
 
 /**
  * Provides various ways of constructing Messages-objects that can be
@@ -43,12 +43,78 @@ import static java.text.MessageFormat.format;
  */
 public final class MessagesProvider {
 
-    @Nullable
+    @Nonnull
+    private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) {
+        }
+    };
+
+    @Nonnull
     private final LocaleProvider localeProvider;
 
     @Nullable
     private final MessageSource messageSource;
 
+    private final boolean flattenBundles;
+
+    @Nullable
+    private final LocaleIndex localeIndex;
+
+    @Nonnull
+    private final MessageFormatCache formatCache;
+
+    @Nullable
+    private final MessageMetrics metrics;
+
+    @Nullable
+    private final TenantOverlays overlays;
+
+    /** Maximum number of locale-bound views cached by each provider */
+    static final int MAX_CACHED_VIEWS = 64;
+
+    /**
+     * Locale-bound views. Locales often come from requests, so the number of views is
+     * bounded and the views are discarded all at once when the limit is reached.
+     */
+    @Nonnull
+    private final ConcurrentMap<Locale, MessagesProvider> views = new ConcurrentHashMap<Locale, MessagesProvider>();
+
+    /**
+     * Resource bundle sources are shared by all Messages-objects of the same interface,
+     * so that they can share their caches as well.
+     */
+    @Nonnull
+    private final ClassCache<Messages> instances = new ClassCache<Messages>() {
+        @Nonnull
+        @Override
+        protected Messages computeValue(@Nonnull Class<?> cl) {
+            return instantiate(cl.asSubclass(Messages.class));
+        }
+    };
+
+    @Nonnull
+    private final ClassCache<ResourceBundleMessageSource> bundleSources = new ClassCache<ResourceBundleMessageSource>() {
+        @Nonnull
+        @Override
+        protected ResourceBundleMessageSource computeValue(@Nonnull Class<?> cl) {
+            return new ResourceBundleMessageSource(bundleNamesFor(cl), localeProvider, flattenBundles);
+        }
+    };
+
+    @Nonnull
+    private final ClassCache<MessageTable> tables = new ClassCache<MessageTable>() {
+        @Nonnull
+        @Override
+        protected MessageTable computeValue(@Nonnull Class<?> cl) {
+            return new MessageTable(bundleSources.get(cl));
+        }
+    };
+
     @Nonnull
     public static MessagesProvider forDefaultLocale() {
         return new MessagesProvider(DefaultLocaleProvider.INSTANCE);
@@ -59,32 +125,611 @@ public final class MessagesProvider {
         return new MessagesProvider(new FixedLocaleProvider(locale));
     }
 
+    /**
+     * Returns a provider for applications which support a fixed set of locales.
+     * <p>
+     * The messages are resolved for all supported locales when a Messages-object is
+     * created, so that looking up a message is just an array access. A locale that is
+     * not supported is mapped to a supported locale with the same language or, if there
+     * is no such locale, to the fallback locale.
+     *
+     * @param localeProvider provider for the locale of the current thread
+     * @param supportedLocales the locales supported by the application
+     * @param fallbackLocale locale to use for unsupported locales, must be one of the supported locales
+     */
+    @Nonnull
+    public static MessagesProvider forSupportedLocales(@Nonnull LocaleProvider localeProvider,
+                                                       @Nonnull Collection<Locale> supportedLocales,
+                                                       @Nonnull Locale fallbackLocale) {
+        return new MessagesProvider(localeProvider, null, false, new LocaleIndex(supportedLocales, fallbackLocale), new MessageFormatCache(), null, null);
+    }
+
     public MessagesProvider(@Nonnull LocaleProvider localeProvider) {
-        this.localeProvider = requireNonNull(localeProvider);
-        this.messageSource = null;
+        this(localeProvider, null, false, null, new MessageFormatCache(), null, null);
     }
 
     public MessagesProvider(@Nonnull MessageSource messageSource) {
-        this.messageSource = requireNonNull(messageSource);
-        this.localeProvider = null;
+        this(messageSource, DefaultLocaleProvider.INSTANCE);
+    }
+
+    /**
+     * Constructs a provider which fetches messages from given source. The locale provider
+     * is used only for formatting the arguments of the messages.
+     */
+    public MessagesProvider(@Nonnull MessageSource messageSource, @Nonnull LocaleProvider localeProvider) {
+        this(localeProvider, requireNonNull(messageSource), false, null, new MessageFormatCache(), null, null);
+    }
+
+    private MessagesProvider(@Nonnull LocaleProvider localeProvider,
+                             @Nullable MessageSource messageSource,
+                             boolean flattenBundles,
+                             @Nullable LocaleIndex localeIndex,
+                             @Nonnull MessageFormatCache formatCache,
+                             @Nullable MessageMetrics metrics,
+                             @Nullable TenantOverlays overlays) {
+        this.localeProvider = requireNonNull(localeProvider);
+        this.messageSource = messageSource;
+        this.flattenBundles = flattenBundles;
+        this.localeIndex = localeIndex;
+        this.formatCache = requireNonNull(formatCache);
+        this.metrics = metrics;
+        this.overlays = overlays;
+    }
+
+    /**
+     * Returns a provider which merges the resource bundles of each interface and its parents
+     * into a single table for each locale. This makes each lookup a single hash lookup, at the
+     * cost of copying the inherited messages to the table of each interface. The tables are
+     * built lazily when a locale is first used.
+     * <p>
+     * The returned provider shares the cache of parsed message formats with this provider.
+     * Has no effect on providers which use a custom {@link MessageSource}.
+     */
+    @Nonnull
+    public MessagesProvider withFlattenedBundles() {
+        return new MessagesProvider(localeProvider, messageSource, true, localeIndex, formatCache, metrics, overlays);
+    }
+
+    /**
+     * Returns a provider which records the lookups and formatting of its messages to given
+     * metrics. The returned provider creates new Messages-objects but shares the cache of
+     * parsed message formats with this provider. Views returned by {@link #withLocale(Locale)}
+     * record to the same metrics.
+     */
+    @Nonnull
+    public MessagesProvider withMetrics(@Nonnull MessageMetrics metrics) {
+        return new MessagesProvider(localeProvider, messageSource, flattenBundles, localeIndex, formatCache, requireNonNull(metrics), overlays);
+    }
+
+    /**
+     * Returns a provider whose Messages-objects look up messages from the overlay of the
+     * current tenant before the messages of this provider. The returned provider creates new
+     * Messages-objects but shares the cache of parsed message formats with this provider.
+     * A single provider serves all tenants, so the bundles and tables are shared by them.
+     */
+    @Nonnull
+    public MessagesProvider withTenantOverlays(@Nonnull TenantOverlays overlays) {
+        return new MessagesProvider(localeProvider, messageSource, flattenBundles, localeIndex, formatCache, metrics, requireNonNull(overlays));
     }
 
     /**
-     * Creates a new Messages object based on given class.
+     * Returns a view of this provider which creates Messages-objects pinned to given locale,
+     * regardless of the locale provider. The messages of the objects are resolved once when
+     * they are created, so calling them involves no locale resolution at all.
+     * <p>
+     * The views of a limited number of locales are cached, so calling this method repeatedly
+     * for the same locale is cheap. Views share the cache of parsed message formats with
+     * this provider.
+     * <p>
+     * If the provider uses a custom {@link MessageSource}, the source still decides the
+     * locale of the messages and only the arguments are formatted using given locale.
+     */
+    @Nonnull
+    public MessagesProvider withLocale(@Nonnull Locale locale) {
+        MessagesProvider view = views.get(locale);
+        if (view == null) {
+            view = new MessagesProvider(new FixedLocaleProvider(locale), messageSource, flattenBundles,
+                                        new LocaleIndex(Collections.singletonList(locale), locale), formatCache, metrics, overlays);
+
+            // Start over instead of tracking the usage of each view, since the locales in use rarely change
+            if (views.size() >= MAX_CACHED_VIEWS)
+                views.clear();
+
+            MessagesProvider old = views.putIfAbsent(locale, view);
+            if (old != null)
+                view = old;
+        }
+        return view;
+    }
+
+    /**
+     * Returns a Messages object based on given class.
+     * <p>
+     * The objects are cached, so calling this method repeatedly for the same class
+     * will return the same object and costs about as much as a map lookup.
+     * <p>
+     * If lokki-processor has generated an implementation for the interface at compile time,
+     * it will be used. Otherwise, if possible, the returned object is an instance of a class
+     * generated at runtime. As a last resort, a {@link java.lang.reflect.Proxy} implementing
+     * the interface is returned.
      */
     @Nonnull
     public <T extends Messages> T create(@Nonnull Class<T> messagesClass) {
-        verifyClass(messagesClass);
+        return messagesClass.cast(instances.get(messagesClass));
+    }
+
+    /**
+     * Returns a Messages object pinned to given locale. Equivalent to
+     * {@code withLocale(locale).create(messagesClass)}.
+     */
+    @Nonnull
+    public <T extends Messages> T create(@Nonnull Class<T> messagesClass, @Nonnull Locale locale) {
+        return withLocale(locale).create(messagesClass);
+    }
+
+    /**
+     * Creates a Messages object using given executor, so that the calling thread is not
+     * blocked. The returned future completes when the object has been created and the
+     * messages of the current locale of the calling thread have been loaded: the resource
+     * bundles of the interface, or the messages of an {@link AsyncMessageSource} in the
+     * locale that the source itself uses.
+     * <p>
+     * The future fails with the exception thrown when creating the object or loading the messages.
+     */
+    @Nonnull
+    public <T extends Messages> Future<T> createAsync(@Nonnull final Class<T> messagesClass, @Nonnull ExecutorService executor) {
+        // The source looks up the messages of its own locale, which may differ from the locale of this provider
+        final Locale locale = (messageSource instanceof AsyncMessageSource)
+            ? ((AsyncMessageSource) messageSource).getLocale()
+            : localeProvider.getLocale();
+        final PendingMessages<T> result = new PendingMessages<T>();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final T messages = create(messagesClass);
+
+                    if (messageSource instanceof AsyncMessageSource) {
+                        // Complete when the load does instead of waiting for it, which could deadlock if
+                        // the load is queued to the executor running this task
+                        final AsyncMessageSource.Load load = ((AsyncMessageSource) messageSource).startPrefetch(locale);
+                        load.whenDone(new Runnable() {
+                            @Override
+                            public void run() {
+                                result.complete(messages, load);
+                            }
+                        });
+                        return;
+                    }
+
+                    if (messageSource == null && localeIndex == null)
+                        tables.get(messagesClass).preload(locale);
+
+                    result.complete(messages);
+                } catch (Throwable e) {
+                    result.fail(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    @Nonnull
+    private <T extends Messages> T instantiate(@Nonnull Class<T> messagesClass) {
+        if (!messagesClass.isInterface())
+            throw new IllegalArgumentException("class is not an interface: " + messagesClass.getName());
+
+        MessageResolver resolver = createResolver(messagesClass);
 
-        MessageSource source = (messageSource != null)
-            ? messageSource
-            : new ResourceBundleMessageSource(bundleNamesFor(messagesClass), localeProvider);
+        // Implementations generated at compile time have been verified by the processor
+        T precompiled = PrecompiledMessages.instantiate(messagesClass, new MessageBinder(resolver));
+        if (precompiled != null)
+            return precompiled;
 
-        return proxy(messagesClass, new MyInvocationHandler(source));
+        MessagesMetadata metadata = MessagesMetadata.of(messagesClass);
+        BoundMessage[] messages = metadata.bind(resolver);
+
+        T generated = MessagesClassGenerator.instantiate(messagesClass, metadata.getMethods(), messages);
+        if (generated != null)
+            return generated;
+
+        return proxy(messagesClass, new MyInvocationHandler(messagesClass, metadata.getMethods(), messages, resolver));
     }
 
     @Nonnull
-    private static List<String> bundleNamesFor(@Nonnull Class<? extends Messages> messagesClass) {
+    private MessageResolver createResolver(@Nonnull Class<?> messagesClass) {
+        if (messageSource != null)
+            return new MessageResolver(messageSource, localeProvider, formatCache, metrics, overlays, messagesClass);
+        else if (localeIndex != null)
+            return new MessageResolver(bundleSources.get(messagesClass), localeProvider, formatCache, localeIndex, metrics, overlays, messagesClass);
+        else
+            return new MessageResolver(tables.get(messagesClass), localeProvider, formatCache, metrics, overlays, messagesClass);
+    }
+
+    /**
+     * Writes the unformatted patterns of all messages of given interface in given locale to
+     * given writer as a JSON object mapping keys to patterns, for use in client-side code.
+     * The patterns are looked up the same way as by the Messages-objects, including the
+     * bundles of parent interfaces and the default messages. Messages without any pattern
+     * are left out. Providers for {@link #forSupportedLocales supported locales} export the
+     * messages of the supported locale that given locale resolves to. The messages are
+     * written in the order of their keys as they are looked up, without collecting them first.
+     * <p>
+     * If the provider uses a custom {@link MessageSource}, the source decides the locale.
+     *
+     * @see #getExportETag(Class, Locale)
+     */
+    public void exportMessages(@Nonnull Class<? extends Messages> messagesClass, @Nonnull Locale locale,
+                               @Nonnull Writer out) throws IOException {
+        out.write('{');
+
+        boolean first = true;
+        Locale effectiveLocale = supportedLocale(locale);
+
+        for (MessageDescriptor descriptor : MessagesMetadata.of(messagesClass).getExportedDescriptors()) {
+            String pattern = resolvePattern(messagesClass, descriptor, effectiveLocale);
+            if (pattern == null)
+                continue;
+
+            if (!first)
+                out.write(',');
+            first = false;
+
+            Json.writeString(descriptor.getKey(), out);
+            out.write(':');
+            Json.writeString(pattern, out);
+        }
+
+        out.write('}');
+        out.flush();
+    }
+
+    /**
+     * Writes the messages of given interface to given stream as UTF-8 encoded JSON.
+     *
+     * @see #exportMessages(Class, Locale, Writer)
+     */
+    public void exportMessages(@Nonnull Class<? extends Messages> messagesClass, @Nonnull Locale locale,
+                               @Nonnull OutputStream out) throws IOException {
+        exportMessages(messagesClass, locale, new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+    }
+
+    /**
+     * Returns a hash of the output of {@link #exportMessages(Class, Locale, OutputStream)},
+     * suitable for use as an HTTP entity tag. The hash only changes when the exported
+     * messages change. It is computed by streaming the messages through a digest, which
+     * costs about as much as exporting them.
+     */
+    @Nonnull
+    public String getExportETag(@Nonnull Class<? extends Messages> messagesClass, @Nonnull Locale locale) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every Java platform is required to support SHA-1
+        }
+
+        try {
+            exportMessages(messagesClass, locale, new DigestOutputStream(NULL_OUTPUT_STREAM, digest));
+        } catch (IOException e) {
+            throw new AssertionError(e); // The digest never throws IOException
+        }
+
+        return String.format("%040x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Returns the messages for given keys from the source of given interface, resolving
+     * the locale and the bundles to search only once for the whole batch. Keys whose
+     * message is not found are not included in the returned map. Messages overridden by the
+     * current tenant take precedence, as they do in the Messages-objects.
+     * <p>
+     * The returned messages are the unformatted patterns. Default messages of the
+     * interface are not applied.
+     */
+    @Nonnull
+    public Map<String, String> getMessages(@Nonnull Class<? extends Messages> messagesClass, @Nonnull Collection<String> keys) {
+        Locale locale = supportedLocale(localeProvider.getLocale());
+
+        Map<String, String> messages = (messageSource != null)
+            ? MessageSources.getMessages(messageSource, keys)
+            : bundleSources.get(messagesClass).getMessages(keys, locale);
+
+        return (overlays != null) ? overlays.applyTo(messagesClass, keys, locale, messages) : messages;
+    }
+
+    /**
+     * Returns the locale whose messages are used for given locale: the supported locale it
+     * resolves to if this provider has a set of supported locales, otherwise the locale itself.
+     */
+    @Nonnull
+    private Locale supportedLocale(@Nonnull Locale locale) {
+        return (localeIndex != null) ? localeIndex.getLocale(localeIndex.indexOf(locale)) : locale;
+    }
+
+    /**
+     * Creates Messages-objects for all interfaces extending {@link Messages} in given packages
+     * and their subpackages. The packages are scanned from both directories and jar-files
+     * visible to given class loader.
+     * <p>
+     * Loading the classes, verifying the interfaces and creating the objects is done in
+     * parallel using given executor.
+     *
+     * @param executor executor for creating the objects, or null to create them in the calling thread
+     * @throws IOException if the class path can't be scanned
+     * @throws IllegalArgumentException if an interface has invalid method definitions
+     */
+    @Nonnull
+    public MessagesRegistry createAll(@Nonnull final ClassLoader loader,
+                                      @Nonnull Collection<String> packageNames,
+                                      @Nullable ExecutorService executor) throws IOException, InterruptedException {
+        Set<String> classNames = new TreeSet<String>();
+        for (String packageName : packageNames)
+            classNames.addAll(ClassPathScanner.findClassNames(loader, packageName));
+
+        final ConcurrentMap<Class<? extends Messages>, Messages> messages = new ConcurrentHashMap<Class<? extends Messages>, Messages>();
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(classNames.size());
+        for (final String className : classNames) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Class<? extends Messages> messagesClass = loadMessagesInterface(loader, className);
+                    if (messagesClass != null)
+                        messages.put(messagesClass, create(messagesClass));
+                    return null;
+                }
+            });
+        }
+
+        runAll(tasks, executor);
+        return new MessagesRegistry(messages);
+    }
+
+    /**
+     * Creates Messages-objects for given interfaces in parallel using given executor.
+     *
+     * @param executor executor for creating the objects, or null to create them in the calling thread
+     * @throws IllegalArgumentException if an interface has invalid method definitions
+     */
+    @Nonnull
+    public MessagesRegistry createAll(@Nonnull Collection<? extends Class<? extends Messages>> messagesClasses,
+                                      @Nullable ExecutorService executor) throws InterruptedException {
+        final ConcurrentMap<Class<? extends Messages>, Messages> messages = new ConcurrentHashMap<Class<? extends Messages>, Messages>();
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(messagesClasses.size());
+        for (final Class<? extends Messages> messagesClass : messagesClasses) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    messages.put(messagesClass, create(messagesClass));
+                    return null;
+                }
+            });
+        }
+
+        runAll(tasks, executor);
+        return new MessagesRegistry(messages);
+    }
+
+    /**
+     * Returns the class with given name if it's an interface extending Messages, otherwise null.
+     */
+    @Nullable
+    private static Class<? extends Messages> loadMessagesInterface(@Nonnull ClassLoader loader, @Nonnull String className) {
+        Class<?> cl;
+        try {
+            cl = Class.forName(className, false, loader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            // The class depends on classes that are not available, so it can't be a usable Messages-interface
+            return null;
+        }
+
+        if (cl.isInterface() && cl != Messages.class && Messages.class.isAssignableFrom(cl))
+            return cl.asSubclass(Messages.class);
+        else
+            return null;
+    }
+
+    /**
+     * Warms up this provider in the calling thread.
+     *
+     * @see #warmUp(Collection, Collection, ExecutorService)
+     */
+    @Nonnull
+    public WarmupReport warmUp(@Nonnull Collection<? extends Class<? extends Messages>> messagesClasses,
+                               @Nonnull Collection<Locale> locales) {
+        try {
+            return warmUp(messagesClasses, locales, null);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e); // Tasks run in the calling thread are never interrupted
+        }
+    }
+
+    /**
+     * Does eagerly all the work that would otherwise be done when the messages of given
+     * interfaces are first used in given locales: creates the Messages-objects, loads the
+     * resource bundles and parses the patterns of the messages. Each phase is run using
+     * given executor and the next phase is started when all the tasks of previous phase
+     * have completed.
+     * <p>
+     * The returned report lists the messages which could not be found and the patterns
+     * which could not be parsed, instead of failing on the first problem.
+     * <p>
+     * A custom {@link MessageSource} resolves messages in the locale it chooses itself, so
+     * with one only the current locale of this provider is warmed up and the other locales
+     * are ignored. {@link WarmupReport#getLocales()} tells which locales were warmed up.
+     *
+     * @param executor executor for running the tasks, or null to run them in the calling thread
+     * @throws IllegalArgumentException if an interface has invalid method definitions
+     */
+    @Nonnull
+    public WarmupReport warmUp(@Nonnull final Collection<? extends Class<? extends Messages>> messagesClasses,
+                               @Nonnull Collection<Locale> locales,
+                               @Nullable ExecutorService executor) throws InterruptedException {
+        if (messageSource != null)
+            locales = Collections.singletonList(localeProvider.getLocale());
+
+        final List<String> missingMessages = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> malformedPatterns = Collections.synchronizedList(new ArrayList<String>());
+
+        List<Callable<Void>> creationTasks = new ArrayList<Callable<Void>>();
+        List<Callable<Void>> bundleTasks = new ArrayList<Callable<Void>>();
+        List<Callable<Void>> patternTasks = new ArrayList<Callable<Void>>();
+
+        for (final Class<? extends Messages> messagesClass : messagesClasses) {
+            creationTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    create(messagesClass);
+                    return null;
+                }
+            });
+
+            for (Locale locale : locales) {
+                final Locale effectiveLocale = supportedLocale(locale);
+
+                if (messageSource == null)
+                    bundleTasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            bundleSources.get(messagesClass).preload(effectiveLocale);
+                            return null;
+                        }
+                    });
+
+                patternTasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        warmUpPatterns(messagesClass, effectiveLocale, missingMessages, malformedPatterns);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        long start = System.nanoTime();
+        runAll(creationTasks, executor);
+        long created = System.nanoTime();
+        runAll(bundleTasks, executor);
+        long bundlesLoaded = System.nanoTime();
+        runAll(patternTasks, executor);
+        long patternsCompiled = System.nanoTime();
+
+        return new WarmupReport(locales, missingMessages, malformedPatterns,
+                                created - start, bundlesLoaded - created, patternsCompiled - bundlesLoaded);
+    }
+
+    private void warmUpPatterns(@Nonnull Class<? extends Messages> messagesClass, @Nonnull Locale locale,
+                                @Nonnull List<String> missingMessages, @Nonnull List<String> malformedPatterns) {
+        if (messageSource == null && localeIndex == null)
+            tables.get(messagesClass).preload(locale);
+
+        for (MessageDescriptor descriptor : MessagesMetadata.of(messagesClass).getDescriptors()) {
+            String pattern = resolvePattern(messagesClass, descriptor, locale);
+
+            String description = messagesClass.getName() + ": " + descriptor.getKey() + " [" + locale + "]";
+            if (pattern == null) {
+                missingMessages.add(description);
+            } else if (descriptor.getArgumentCount() != 0) {
+                // Patterns of messages without arguments are never parsed
+                try {
+                    formatCache.prepare(pattern, locale);
+                } catch (IllegalArgumentException e) {
+                    malformedPatterns.add(description + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the pattern of given message in given locale, falling back to the default message,
+     * or null if there is no message at all. Messages overridden by the current tenant take
+     * precedence, as they do in the Messages-objects.
+     */
+    @Nullable
+    private String resolvePattern(@Nonnull Class<? extends Messages> messagesClass, @Nonnull MessageDescriptor descriptor,
+                                  @Nonnull Locale locale) {
+        String message = (overlays != null) ? overlays.getMessage(messagesClass, descriptor.getKey(), locale) : null;
+        if (message == null)
+            message = (messageSource != null)
+                ? messageSource.getMessage(descriptor.getKey())
+                : bundleSources.get(messagesClass).getMessage(descriptor.getKey(), locale);
+        return (message != null) ? message : descriptor.getDefaultMessage();
+    }
+
+    private static void runAll(@Nonnull List<Callable<Void>> tasks, @Nullable ExecutorService executor) throws InterruptedException {
+        if (executor == null) {
+            for (Callable<Void> task : tasks)
+                callUnchecked(task);
+            return;
+        }
+
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private static void callUnchecked(@Nonnull Callable<Void> task) {
+        try {
+            task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reloads the resource bundles of the Messages-objects created by this provider. The cached
+     * bundles, merged tables and missing keys are discarded, along with the cache of
+     * {@link ResourceBundle} itself, so the bundles are loaded again when next used.
+     * <p>
+     * Messages-objects of locale-bound views and of providers for
+     * {@link #forSupportedLocales supported locales} keep the messages resolved when
+     * they were created. Custom message sources are not affected.
+     */
+    public void reloadBundles() {
+        ResourceBundle.clearCache();
+
+        // Tables are built from the sources, so they are discarded only after the sources have been reloaded
+        for (ResourceBundleMessageSource source : bundleSources.values())
+            source.reload();
+        for (MessageTable table : tables.values())
+            table.reload();
+    }
+
+    /**
+     * Returns the statistics of the cache of parsed message formats shared by
+     * all Messages-objects created by this provider.
+     */
+    @Nonnull
+    public CacheStatistics getFormatCacheStatistics() {
+        return formatCache.getStatistics();
+    }
+
+    /**
+     * Returns the number of cached locale-bound views, for testing.
+     */
+    int getCachedViewCount() {
+        return views.size();
+    }
+
+    @Nonnull
+    private static List<String> bundleNamesFor(@Nonnull Class<?> messagesClass) {
         List<String> bundles = new ArrayList<String>();
         addBundleNames(messagesClass, bundles);
         return bundles;
@@ -98,51 +743,135 @@ public final class MessagesProvider {
                 addBundleNames(parent, bundles);
     }
 
-    private static <T extends Messages> void verifyClass(@Nonnull Class<T> messagesClass) {
-        if (!messagesClass.isInterface())
-            throw new IllegalArgumentException("class is not an interface: " + messagesClass.getName());
-        
-        for (Method method : messagesClass.getMethods())
-            if (method.getReturnType() != String.class)
-                throw new IllegalArgumentException("invalid method definition: " + method);
-    }
-
     private static final class MyInvocationHandler implements InvocationHandler {
 
         @Nonnull
-        private final MessageSource messageSource;
+        private final Map<Method, BoundMessage> messages = new HashMap<Method, BoundMessage>();
+
+        @Nonnull
+        private final MessageResolver resolver;
+
+        MyInvocationHandler(@Nonnull Class<? extends Messages> messagesClass,
+                            @Nonnull List<Method> methods,
+                            @Nonnull BoundMessage[] boundMessages,
+                            @Nonnull MessageResolver resolver) {
+            this.resolver = requireNonNull(resolver);
 
-        MyInvocationHandler(@Nonnull MessageSource messageSource) {
-            this.messageSource = requireNonNull(messageSource);
+            Map<String, BoundMessage> messagesBySignature = new HashMap<String, BoundMessage>();
+            for (int i = 0; i < boundMessages.length; i++)
+                messagesBySignature.put(MessagesMetadata.signature(methods.get(i)), boundMessages[i]);
+
+            // Proxies may pass in any of the overridden methods, so bind them all to the most specific one
+            for (Method method : messagesClass.getMethods())
+                messages.put(method, messagesBySignature.get(MessagesMetadata.signature(method)));
         }
 
-        @Nonnull
+        @Nullable
         @Override
         public Object invoke(Object target, @Nonnull Method method, @Nullable Object[] args) throws Throwable {
-            String key = resolveMessageKey(method);
-            String pattern = resolveMessagePattern(key, method);
+            BoundMessage message = messages.get(method);
+            if (message == null)
+                message = resolver.bind(MessageDescriptor.forMethod(method));
+
+            // Verified methods returning void write into an Appendable given as the last argument
+            if (args != null && method.getReturnType() == void.class) {
+                int last = args.length - 1;
+                message.formatTo((Appendable) args[last], Arrays.copyOf(args, last));
+                return null;
+            }
 
-            if (pattern != null)
-                return (args != null && args.length != 0) ? format(pattern, args) : pattern;
-            else
-                return "???" + key + "???";
+            return message.format(args);
         }
+    }
+
+    /**
+     * Future of Messages-objects created by {@link #createAsync(Class, ExecutorService)}, which
+     * is completed by the tasks creating the objects. The future can't be cancelled, since the
+     * object is created and the messages loaded for all callers anyway.
+     */
+    private static final class PendingMessages<T> implements Future<T> {
 
         @Nonnull
-        private static String resolveMessageKey(@Nonnull Method method) {
-            Key keyAnnotation = method.getAnnotation(Key.class);
-            return (keyAnnotation != null) ? keyAnnotation.value() : method.getName();
-        }
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        // Written before the latch is released, which makes them visible to the threads waiting for it
+
+        @Nullable
+        private T messages;
 
         @Nullable
-        private String resolveMessagePattern(@Nonnull String key, @Nonnull Method method) {
-            String message = messageSource.getMessage(key);
-            if (message != null) {
-                return message;
-            } else {
-                DefaultMessage defaultMessage = method.getAnnotation(DefaultMessage.class);
-                return defaultMessage != null ? defaultMessage.value() : null;
+        private Throwable failure;
+
+        void complete(@Nonnull T messages) {
+            finish(messages, null);
+        }
+
+        /**
+         * Completes with given messages, or with the failure of given completed load.
+         */
+        void complete(@Nonnull T messages, @Nonnull Future<Void> load) {
+            // The load has completed, so getting its result doesn't block unless the thread is interrupted
+            boolean interrupted = Thread.interrupted();
+            try {
+                load.get();
+                finish(messages, null);
+            } catch (ExecutionException e) {
+                finish(null, e.getCause());
+            } catch (CancellationException e) {
+                finish(null, e);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
             }
         }
+
+        void fail(@Nonnull Throwable e) {
+            finish(null, e);
+        }
+
+        private synchronized void finish(@Nullable T messages, @Nullable Throwable failure) {
+            if (completed.getCount() == 0)
+                return;
+
+            this.messages = messages;
+            this.failure = failure;
+            completed.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return completed.getCount() == 0;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            completed.await();
+            return result();
+        }
+
+        @Override
+        public T get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!completed.await(timeout, unit))
+                throw new TimeoutException();
+            return result();
+        }
+
+        private T result() throws ExecutionException {
+            if (failure != null)
+                throw new ExecutionException(failure);
+            return messages;
+        }
     }
 }
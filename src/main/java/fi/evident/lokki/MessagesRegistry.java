@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * Messages-objects created in bulk by {@link MessagesProvider#createAll}, keyed by their interfaces.
+ */
+public final class MessagesRegistry {
+
+    @Nonnull
+    private final Map<Class<? extends Messages>, Messages> messagesByClass;
+
+    MessagesRegistry(@Nonnull Map<Class<? extends Messages>, Messages> messagesByClass) {
+        this.messagesByClass = new HashMap<Class<? extends Messages>, Messages>(messagesByClass);
+    }
+
+    /**
+     * Returns the Messages-object implementing given interface.
+     *
+     * @throws IllegalArgumentException if the interface is not in this registry
+     */
+    @Nonnull
+    public <T extends Messages> T get(@Nonnull Class<T> messagesClass) {
+        Messages messages = messagesByClass.get(messagesClass);
+        if (messages == null)
+            throw new IllegalArgumentException("interface is not in registry: " + messagesClass.getName());
+
+        return messagesClass.cast(messages);
+    }
+
+    /**
+     * Returns the interfaces in this registry.
+     */
+    @Nonnull
+    public Set<Class<? extends Messages>> getMessagesClasses() {
+        return Collections.unmodifiableSet(messagesByClass.keySet());
+    }
+
+    public int size() {
+        return messagesByClass.size();
+    }
+
+    @Override
+    public String toString() {
+        return "MessagesRegistry[size=" + messagesByClass.size() + "]";
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Support for Messages-implementations generated at compile time by lokki-processor.
+ * <p>
+ * For an interface {@code foo.Outer.Inner}, the processor generates class
+ * {@code foo.Outer_Inner_Lokki} which has a public constructor taking a {@link MessageBinder}.
+ */
+final class PrecompiledMessages {
+
+    static final String CLASS_NAME_SUFFIX = "_Lokki";
+
+    private PrecompiledMessages() { }
+
+    /**
+     * Returns the name of the class generated for given interface.
+     */
+    @Nonnull
+    static String implementationClassName(@Nonnull Class<?> messagesClass) {
+        String name = messagesClass.getName();
+        int lastDot = name.lastIndexOf('.');
+
+        return name.substring(0, lastDot + 1) + name.substring(lastDot + 1).replace('$', '_') + CLASS_NAME_SUFFIX;
+    }
+
+    /**
+     * Instantiates the implementation generated at compile time for given interface,
+     * or returns null if there is no such implementation.
+     */
+    @Nullable
+    static <T extends Messages> T instantiate(@Nonnull Class<T> messagesClass, @Nonnull MessageBinder binder) {
+        Class<?> cl;
+        try {
+            cl = Class.forName(implementationClassName(messagesClass), true, messagesClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        if (!messagesClass.isAssignableFrom(cl))
+            return null;
+
+        try {
+            Constructor<?> constructor = cl.getConstructor(MessageBinder.class);
+            return messagesClass.cast(constructor.newInstance(binder));
+
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("invalid generated class: " + cl.getName(), e);
+        } catch (InstantiationException e) {
+            throw new IllegalStateException("invalid generated class: " + cl.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("invalid generated class: " + cl.getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("failed to instantiate " + cl.getName(), e.getCause());
+        }
+    }
+}
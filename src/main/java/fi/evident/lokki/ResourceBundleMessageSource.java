@@ -25,14 +25,31 @@ package fi.evident.lokki;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static fi.evident.lokki.Utils.requireNonNull;
 
 /**
  * A MessageSource which uses Java's normal {@link ResourceBundle}-mechanism
  * for loading the localization messages.
+ * <p>
+ * The bundles are resolved once for each locale and cached, including the
+ * information about base names which don't have a bundle at all. Keys which are not
+ * found in any bundle are cached as well, so that repeated lookups of a missing key cost
+ * a single hash lookup instead of searching all bundles. The missing keys of each locale
+ * are limited to a fixed number, and the keys of a locale are discarded when it fills up.
+ * <p>
+ * If the source is created with flattening enabled, the bundles are instead merged into
+ * a single table for each locale when the locale is first used. Each lookup is then a
+ * single hash lookup, regardless of the number of base names.
+ * <p>
+ * All cached state is discarded by {@link #reload()}.
  */
-final class ResourceBundleMessageSource implements MessageSource {
+final class ResourceBundleMessageSource implements BatchMessageSource {
+
+    static final int DEFAULT_MAX_MISSING_KEYS = 1024;
 
     @Nonnull
     private final List<String> baseNames;
@@ -40,25 +57,261 @@ final class ResourceBundleMessageSource implements MessageSource {
     @Nonnull
     private final LocaleProvider localeProvider;
 
+    private final boolean flatten;
+
+    private final int maxMissingKeys;
+
+    /**
+     * The caches are replaced as a whole on reload, so that lookups racing with the
+     * reload can't put stale results into the new caches.
+     */
+    @Nonnull
+    private volatile Caches caches = new Caches();
+
     ResourceBundleMessageSource(@Nonnull List<String> baseNames, @Nonnull LocaleProvider localeProvider) {
+        this(baseNames, localeProvider, false);
+    }
+
+    ResourceBundleMessageSource(@Nonnull List<String> baseNames, @Nonnull LocaleProvider localeProvider, boolean flatten) {
+        this(baseNames, localeProvider, flatten, DEFAULT_MAX_MISSING_KEYS);
+    }
+
+    ResourceBundleMessageSource(@Nonnull List<String> baseNames, @Nonnull LocaleProvider localeProvider, boolean flatten, int maxMissingKeys) {
+        if (maxMissingKeys < 0) throw new IllegalArgumentException("invalid maxMissingKeys: " + maxMissingKeys);
+
         this.baseNames = new ArrayList<String>(baseNames);
         this.localeProvider = requireNonNull(localeProvider);
+        this.flatten = flatten;
+        this.maxMissingKeys = maxMissingKeys;
     }
 
     @Nullable
     @Override
     public String getMessage(@Nonnull String key) {
-        Locale locale = localeProvider.getLocale();
+        return getMessage(key, localeProvider.getLocale());
+    }
+
+    /**
+     * Returns the message for given key and locale, or null if the message is not found.
+     */
+    @Nullable
+    String getMessage(@Nonnull String key, @Nonnull Locale locale) {
+        Caches caches = this.caches;
+
+        if (flatten)
+            return caches.tableFor(locale).get(key);
+
+        MissingKeys missingKeys = caches.missingKeysFor(locale);
+        if (missingKeys.contains(key))
+            return null;
+
+        for (ResourceBundle bundle : caches.bundlesFor(locale))
+            if (bundle.containsKey(key))
+                return bundle.getString(key);
+
+        caches.addMissingKey(locale, missingKeys, key);
+        return null;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, String> getMessages(@Nonnull Collection<String> keys) {
+        return getMessages(keys, localeProvider.getLocale());
+    }
+
+    /**
+     * Returns the messages for given keys and locale, resolving the bundles only once
+     * for the whole batch. Keys whose message is not found are not included.
+     */
+    @Nonnull
+    Map<String, String> getMessages(@Nonnull Collection<String> keys, @Nonnull Locale locale) {
+        Caches caches = this.caches;
+        Map<String, String> messages = new HashMap<String, String>(keys.size() * 2);
+
+        if (flatten) {
+            Map<String, String> table = caches.tableFor(locale);
+            for (String key : keys) {
+                String message = table.get(key);
+                if (message != null)
+                    messages.put(key, message);
+            }
+            return messages;
+        }
+
+        MissingKeys missingKeys = caches.missingKeysFor(locale);
+        ResourceBundle[] bundles = caches.bundlesFor(locale);
+
+        nextKey:
+        for (String key : keys) {
+            if (missingKeys.contains(key))
+                continue;
+
+            for (ResourceBundle bundle : bundles) {
+                if (bundle.containsKey(key)) {
+                    messages.put(key, bundle.getString(key));
+                    continue nextKey;
+                }
+            }
+
+            missingKeys = caches.addMissingKey(locale, missingKeys, key);
+        }
+        return messages;
+    }
+
+    /**
+     * Loads the bundles of given locale, so that they don't need to be loaded when first used.
+     */
+    void preload(@Nonnull Locale locale) {
+        if (flatten)
+            caches.tableFor(locale);
+        else
+            caches.bundlesFor(locale);
+    }
+
+    /**
+     * Discards the cached bundles, tables and missing keys, so that they are loaded again
+     * when next used. The caller is responsible for clearing the cache of {@link ResourceBundle}
+     * if the bundles themselves need to be reloaded.
+     */
+    void reload() {
+        caches = new Caches();
+    }
+
+    /**
+     * Returns the number of missing keys currently cached, for testing.
+     */
+    int getMissingKeyCount() {
+        int count = 0;
+        for (MissingKeys missingKeys : caches.missingKeysByLocale.values())
+            count += missingKeys.count.get();
+        return count;
+    }
+
+    private final class Caches {
+
+        @Nonnull
+        private final ConcurrentMap<Locale, ResourceBundle[]> bundlesByLocale = new ConcurrentHashMap<Locale, ResourceBundle[]>();
+
+        @Nonnull
+        private final ConcurrentMap<Locale, Map<String, String>> tablesByLocale = new ConcurrentHashMap<Locale, Map<String, String>>();
+
+        @Nonnull
+        private final ConcurrentMap<Locale, MissingKeys> missingKeysByLocale = new ConcurrentHashMap<Locale, MissingKeys>();
+
+        /**
+         * Returns the bundles to search for given locale, in the order of the base names.
+         */
+        @Nonnull
+        ResourceBundle[] bundlesFor(@Nonnull Locale locale) {
+            ResourceBundle[] bundles = bundlesByLocale.get(locale);
+            if (bundles == null) {
+                bundles = loadBundles(locale);
+                ResourceBundle[] old = bundlesByLocale.putIfAbsent(locale, bundles);
+                if (old != null)
+                    bundles = old;
+            }
+            return bundles;
+        }
+
+        /**
+         * Returns the merged table of all messages for given locale.
+         */
+        @Nonnull
+        Map<String, String> tableFor(@Nonnull Locale locale) {
+            Map<String, String> table = tablesByLocale.get(locale);
+            if (table == null) {
+                table = buildTable(locale);
+                Map<String, String> old = tablesByLocale.putIfAbsent(locale, table);
+                if (old != null)
+                    table = old;
+            }
+            return table;
+        }
+
+        /**
+         * Returns the keys known to be missing from all bundles of given locale.
+         */
+        @Nonnull
+        MissingKeys missingKeysFor(@Nonnull Locale locale) {
+            MissingKeys keys = missingKeysByLocale.get(locale);
+            if (keys == null) {
+                keys = new MissingKeys();
+                MissingKeys old = missingKeysByLocale.putIfAbsent(locale, keys);
+                if (old != null)
+                    keys = old;
+            }
+            return keys;
+        }
+
+        /**
+         * Remembers that given key is missing from given locale. If the missing keys of the
+         * locale are already full, they are discarded and a new set is started, instead of
+         * tracking the usage of each key. Returns the set to use for further keys.
+         */
+        @Nonnull
+        MissingKeys addMissingKey(@Nonnull Locale locale, @Nonnull MissingKeys missingKeys, @Nonnull String key) {
+            if (maxMissingKeys == 0)
+                return missingKeys;
+
+            if (missingKeys.count.get() >= maxMissingKeys) {
+                missingKeysByLocale.replace(locale, missingKeys, new MissingKeys());
+                missingKeys = missingKeysFor(locale);
+            }
+
+            if (missingKeys.keys.add(key) && missingKeys.count.incrementAndGet() > maxMissingKeys) {
+                missingKeys.keys.remove(key);
+                missingKeys.count.decrementAndGet();
+            }
+            return missingKeys;
+        }
+    }
+
+    /**
+     * Keys missing from all bundles of a locale.
+     */
+    private static final class MissingKeys {
+
+        @Nonnull
+        final Set<String> keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        @Nonnull
+        final AtomicInteger count = new AtomicInteger();
+
+        boolean contains(@Nonnull String key) {
+            return keys.contains(key);
+        }
+    }
+
+    @Nonnull
+    private Map<String, String> buildTable(@Nonnull Locale locale) {
+        ResourceBundle[] bundles = loadBundles(locale);
+        Map<String, String> table = new HashMap<String, String>();
+
+        // Process the bundles in reverse order so that children override their parents
+        for (int i = bundles.length - 1; i >= 0; i--) {
+            ResourceBundle bundle = bundles[i];
+            for (String key : bundle.keySet()) {
+                Object value = bundle.getObject(key);
+                if (value instanceof String)
+                    table.put(key, (String) value);
+            }
+        }
+
+        return table;
+    }
+
+    @Nonnull
+    private ResourceBundle[] loadBundles(@Nonnull Locale locale) {
+        List<ResourceBundle> bundles = new ArrayList<ResourceBundle>(baseNames.size());
 
         for (String baseName : baseNames) {
             try {
-                ResourceBundle bundle = ResourceBundle.getBundle(baseName, locale);
-                return bundle.getString(key);
+                bundles.add(ResourceBundle.getBundle(baseName, locale));
             } catch (MissingResourceException e) {
-                // Ok, try next bundle
+                // There's no bundle for this base name, so skip it
             }
         }
 
-        return null;
+        return bundles.toArray(new ResourceBundle[bundles.size()]);
     }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * A LocaleProvider whose locale is bound only for the duration of a task:
+ * <pre>
+ * provider.run(requestLocale, new Runnable() { ... });
+ * </pre>
+ * Outside of the tasks the locale of a fallback provider is returned. Bindings may
+ * be nested, and the previous binding is always restored when a task completes. Nothing
+ * is left behind in threads after the outermost task, which keeps the provider cheap
+ * for applications that run each request in a thread of its own.
+ */
+public final class ScopedLocaleProvider implements LocaleProvider {
+
+    @Nonnull
+    private final ThreadLocal<Locale> locale = new ThreadLocal<Locale>();
+
+    @Nonnull
+    private final LocaleProvider fallbackProvider;
+
+    public ScopedLocaleProvider() {
+        this(DefaultLocaleProvider.INSTANCE);
+    }
+
+    public ScopedLocaleProvider(@Nonnull LocaleProvider fallbackProvider) {
+        this.fallbackProvider = requireNonNull(fallbackProvider);
+    }
+
+    @Nonnull
+    @Override
+    public Locale getLocale() {
+        Locale current = locale.get();
+        return (current != null) ? current : fallbackProvider.getLocale();
+    }
+
+    /**
+     * Runs given task with given locale bound to the current thread.
+     */
+    public void run(@Nonnull Locale locale, @Nonnull Runnable task) {
+        Locale previous = bind(locale);
+        try {
+            task.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Calls given task with given locale bound to the current thread.
+     */
+    public <T> T call(@Nonnull Locale locale, @Nonnull Callable<T> task) throws Exception {
+        Locale previous = bind(locale);
+        try {
+            return task.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    @Nullable
+    private Locale bind(@Nonnull Locale locale) {
+        Locale previous = this.locale.get();
+        this.locale.set(requireNonNull(locale));
+        return previous;
+    }
+
+    private void restore(@Nullable Locale previous) {
+        if (previous != null)
+            locale.set(previous);
+        else
+            locale.remove();
+    }
+}
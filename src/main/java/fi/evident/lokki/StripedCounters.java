@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of long counters which can be updated concurrently without contention.
+ * <p>
+ * The counters start out as a single unpadded cell each, which keeps the footprint small
+ * for the many counters that are never contended. The first time a compare-and-set of a
+ * cell fails because of a concurrent update, the counters are inflated to stripes: each
+ * thread then updates one of several stripes, picked by the thread id, and reading a
+ * counter sums up the base cell and the stripes. The counters of a stripe are padded to a
+ * cache line of their own, so that threads updating different stripes don't interfere
+ * with each other.
+ */
+final class StripedCounters {
+
+    /** Number of longs reserved for each stripe, which should cover a cache line */
+    private static final int STRIPE_SIZE = 8;
+
+    private static final int STRIPES = stripeCount(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray base;
+
+    /** Stripes allocated on first contention, or null while the counters are uncontended */
+    private volatile AtomicLongArray stripes;
+
+    StripedCounters(int counters) {
+        if (counters <= 0 || counters > STRIPE_SIZE) throw new IllegalArgumentException("invalid number of counters: " + counters);
+
+        this.base = new AtomicLongArray(counters);
+    }
+
+    /**
+     * Returns the smallest power of two that is at least the number of processors, up to 16.
+     */
+    static int stripeCount(int processors) {
+        int stripes = 1;
+        while (stripes < processors && stripes < 16)
+            stripes <<= 1;
+        return stripes;
+    }
+
+    void increment(int counter) {
+        add(counter, 1);
+    }
+
+    void add(int counter, long delta) {
+        AtomicLongArray stripes = this.stripes;
+        if (stripes == null) {
+            long value = base.get(counter);
+            if (base.compareAndSet(counter, value, value + delta))
+                return;
+
+            stripes = inflate();
+        }
+
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        stripes.getAndAdd(stripe * STRIPE_SIZE + counter, delta);
+    }
+
+    /**
+     * Returns the current value of given counter. The value is not an atomic snapshot
+     * if the counter is concurrently updated.
+     */
+    long sum(int counter) {
+        long sum = base.get(counter);
+
+        AtomicLongArray stripes = this.stripes;
+        if (stripes != null)
+            for (int stripe = 0; stripe < STRIPES; stripe++)
+                sum += stripes.get(stripe * STRIPE_SIZE + counter);
+        return sum;
+    }
+
+    /**
+     * Returns the number of cells allocated for the counters.
+     */
+    int cellCount() {
+        AtomicLongArray stripes = this.stripes;
+        return base.length() + ((stripes != null) ? stripes.length() : 0);
+    }
+
+    /**
+     * Allocates the stripes after a failed update of a base cell.
+     */
+    private synchronized AtomicLongArray inflate() {
+        if (stripes == null)
+            stripes = new AtomicLongArray(STRIPES * STRIPE_SIZE);
+        return stripes;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * Messages overridden by tenants of a multi-tenant application.
+ * <p>
+ * Each tenant stores only the messages it overrides, so all tenants share the bundles
+ * and tables of a single {@link MessagesProvider} and memory grows with the number of
+ * overrides rather than the number of tenants. The Messages-objects of providers returned
+ * by {@link MessagesProvider#withTenantOverlays(TenantOverlays)} look up the overlay of the
+ * current tenant first and fall back to the shared messages.
+ * <p>
+ * An override applies to its locale and the locales more specific than it, the same way
+ * as the messages of resource bundles do: an override for {@code fi} applies to
+ * {@code fi_FI} as well, and an override for {@link Locale#ROOT} to all locales. Overrides
+ * are bound to the interface they are given for, and don't apply to interfaces extending it.
+ * The overlays of tenants are immutable and replaced whenever they change, so lookups never block.
+ */
+public final class TenantOverlays {
+
+    private static final ResourceBundle.Control CANDIDATES =
+        ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_DEFAULT);
+
+    private static final int MAX_CACHED_CANDIDATES = 256;
+
+    /** Candidate chains of the locales used so far, shared by all overlays */
+    @Nonnull
+    private static final ConcurrentMap<Locale, List<Locale>> candidatesByLocale = new ConcurrentHashMap<Locale, List<Locale>>();
+
+    @Nonnull
+    private final TenantProvider tenantProvider;
+
+    @Nonnull
+    private final ConcurrentMap<String, Overlay> overlaysByTenant = new ConcurrentHashMap<String, Overlay>();
+
+    public TenantOverlays(@Nonnull TenantProvider tenantProvider) {
+        this.tenantProvider = requireNonNull(tenantProvider);
+    }
+
+    /**
+     * Overrides a message for given tenant.
+     *
+     * @param locale locale of the message, or {@link Locale#ROOT} to override the message in all locales
+     */
+    public synchronized void setMessage(@Nonnull String tenant, @Nonnull Class<? extends Messages> messagesClass,
+                                        @Nonnull String key, @Nonnull Locale locale, @Nonnull String message) {
+        Overlay overlay = overlaysByTenant.get(tenant);
+        Overlay newOverlay = (overlay != null) ? overlay.with(messagesClass, key, locale, message)
+                                               : Overlay.EMPTY.with(messagesClass, key, locale, message);
+        overlaysByTenant.put(tenant, newOverlay);
+    }
+
+    /**
+     * Removes an override of given tenant, if there is one.
+     */
+    public synchronized void removeMessage(@Nonnull String tenant, @Nonnull Class<? extends Messages> messagesClass,
+                                           @Nonnull String key, @Nonnull Locale locale) {
+        Overlay overlay = overlaysByTenant.get(tenant);
+        if (overlay == null)
+            return;
+
+        Overlay newOverlay = overlay.with(messagesClass, key, locale, null);
+        if (newOverlay.isEmpty())
+            overlaysByTenant.remove(tenant);
+        else
+            overlaysByTenant.put(tenant, newOverlay);
+    }
+
+    /**
+     * Removes all overrides of given tenant.
+     */
+    public synchronized void removeTenant(@Nonnull String tenant) {
+        overlaysByTenant.remove(tenant);
+    }
+
+    /**
+     * Returns the number of overridden messages of all tenants.
+     */
+    public int getOverrideCount() {
+        int count = 0;
+        for (Overlay overlay : overlaysByTenant.values())
+            count += overlay.size;
+        return count;
+    }
+
+    /**
+     * Returns the message overridden by the current tenant, or null if it's not overridden.
+     */
+    @Nullable
+    String getMessage(@Nonnull Class<?> messagesClass, @Nonnull String key, @Nonnull Locale locale) {
+        String tenant = tenantProvider.getTenant();
+        if (tenant == null)
+            return null;
+
+        Overlay overlay = overlaysByTenant.get(tenant);
+        return (overlay != null) ? overlay.get(messagesClass, key, locale) : null;
+    }
+
+    /**
+     * Returns given messages with the messages of given keys overridden by the current tenant
+     * replaced. Returns the messages as they are if the tenant overrides none of the keys.
+     */
+    @Nonnull
+    Map<String, String> applyTo(@Nonnull Class<?> messagesClass, @Nonnull Collection<String> keys, @Nonnull Locale locale,
+                                @Nonnull Map<String, String> messages) {
+        String tenant = tenantProvider.getTenant();
+        Overlay overlay = (tenant != null) ? overlaysByTenant.get(tenant) : null;
+        if (overlay == null)
+            return messages;
+
+        Map<String, String> result = messages;
+        for (String key : keys) {
+            String message = overlay.get(messagesClass, key, locale);
+            if (message != null) {
+                // The messages may come from a source that returns an unmodifiable map
+                if (result == messages)
+                    result = new HashMap<String, String>(messages);
+                result.put(key, message);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the locales whose overrides apply to given locale, most specific first.
+     */
+    @Nonnull
+    private static List<Locale> candidatesFor(@Nonnull Locale locale) {
+        List<Locale> candidates = candidatesByLocale.get(locale);
+        if (candidates == null) {
+            candidates = Collections.unmodifiableList(CANDIDATES.getCandidateLocales("", locale));
+
+            // Locales often come from requests, so start over instead of growing without bounds
+            if (candidatesByLocale.size() >= MAX_CACHED_CANDIDATES)
+                candidatesByLocale.clear();
+
+            List<Locale> old = candidatesByLocale.putIfAbsent(locale, candidates);
+            if (old != null)
+                candidates = old;
+        }
+        return candidates;
+    }
+
+    /**
+     * Immutable overrides of a single tenant, keyed by interface, key and locale, in
+     * the order of decreasing selectivity, so that lookups of messages which are not
+     * overridden end as early as possible.
+     */
+    private static final class Overlay {
+
+        static final Overlay EMPTY = new Overlay(Collections.<Class<?>, Map<String, Map<Locale, String>>>emptyMap(), 0);
+
+        @Nonnull
+        private final Map<Class<?>, Map<String, Map<Locale, String>>> messages;
+
+        final int size;
+
+        private Overlay(@Nonnull Map<Class<?>, Map<String, Map<Locale, String>>> messages, int size) {
+            this.messages = messages;
+            this.size = size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Nullable
+        String get(@Nonnull Class<?> messagesClass, @Nonnull String key, @Nonnull Locale locale) {
+            Map<String, Map<Locale, String>> keys = messages.get(messagesClass);
+            if (keys == null)
+                return null;
+
+            Map<Locale, String> locales = keys.get(key);
+            if (locales == null)
+                return null;
+
+            String message = locales.get(locale);
+            if (message != null)
+                return message;
+
+            for (Locale candidate : candidatesFor(locale)) {
+                message = locales.get(candidate);
+                if (message != null)
+                    return message;
+            }
+            return null;
+        }
+
+        /**
+         * Returns a copy of this overlay with given message set, or removed if the message is null.
+         */
+        @Nonnull
+        Overlay with(@Nonnull Class<?> messagesClass, @Nonnull String key, @Nonnull Locale locale, @Nullable String message) {
+            Map<Class<?>, Map<String, Map<Locale, String>>> newMessages = new HashMap<Class<?>, Map<String, Map<Locale, String>>>(messages);
+
+            Map<String, Map<Locale, String>> oldKeys = messages.get(messagesClass);
+            Map<String, Map<Locale, String>> keys = (oldKeys != null)
+                ? new HashMap<String, Map<Locale, String>>(oldKeys)
+                : new HashMap<String, Map<Locale, String>>();
+
+            Map<Locale, String> oldLocales = keys.get(key);
+            Map<Locale, String> locales = (oldLocales != null)
+                ? new HashMap<Locale, String>(oldLocales)
+                : new HashMap<Locale, String>();
+
+            int oldSize = locales.size();
+            if (message != null)
+                locales.put(requireNonNull(locale), message);
+            else
+                locales.remove(locale);
+            int newSize = size + locales.size() - oldSize;
+
+            if (locales.isEmpty())
+                keys.remove(key);
+            else
+                keys.put(requireNonNull(key), locales);
+
+            if (keys.isEmpty())
+                newMessages.remove(messagesClass);
+            else
+                newMessages.put(messagesClass, keys);
+
+            return new Overlay(newMessages, newSize);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+
+import static fi.evident.lokki.Utils.requireNonNull;
+
+/**
+ * A LocaleProvider which returns a locale set separately for each thread.
+ * If the current thread has no locale, the locale of a fallback provider is returned.
+ * <p>
+ * Since a single provider serves all threads, Messages-objects created with it can be
+ * shared by all requests. Threads that are reused, like those of a thread pool, should
+ * call {@link #remove()} when they are done with the request.
+ */
+public final class ThreadLocalLocaleProvider implements LocaleProvider {
+
+    @Nonnull
+    private final ThreadLocal<Locale> locale = new ThreadLocal<Locale>();
+
+    @Nonnull
+    private final LocaleProvider fallbackProvider;
+
+    public ThreadLocalLocaleProvider() {
+        this(DefaultLocaleProvider.INSTANCE);
+    }
+
+    public ThreadLocalLocaleProvider(@Nonnull LocaleProvider fallbackProvider) {
+        this.fallbackProvider = requireNonNull(fallbackProvider);
+    }
+
+    @Nonnull
+    @Override
+    public Locale getLocale() {
+        Locale current = locale.get();
+        return (current != null) ? current : fallbackProvider.getLocale();
+    }
+
+    /**
+     * Sets the locale of the current thread.
+     */
+    public void setLocale(@Nonnull Locale locale) {
+        this.locale.set(requireNonNull(locale));
+    }
+
+    /**
+     * Removes the locale of the current thread, so that the fallback provider is used again.
+     */
+    public void remove() {
+        locale.remove();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Result of {@link MessagesProvider#warmUp}: the problems found in the messages and
+ * the time spent in each phase of the warm-up.
+ */
+public final class WarmupReport {
+
+    @Nonnull
+    private final List<Locale> locales;
+
+    @Nonnull
+    private final List<String> missingMessages;
+
+    @Nonnull
+    private final List<String> malformedPatterns;
+
+    private final long creationNanos;
+    private final long bundleLoadingNanos;
+    private final long patternCompilationNanos;
+
+    WarmupReport(@Nonnull Collection<Locale> locales, @Nonnull List<String> missingMessages, @Nonnull List<String> malformedPatterns,
+                 long creationNanos, long bundleLoadingNanos, long patternCompilationNanos) {
+        this.locales = Collections.unmodifiableList(new ArrayList<Locale>(locales));
+        this.missingMessages = sortedCopy(missingMessages);
+        this.malformedPatterns = sortedCopy(malformedPatterns);
+        this.creationNanos = creationNanos;
+        this.bundleLoadingNanos = bundleLoadingNanos;
+        this.patternCompilationNanos = patternCompilationNanos;
+    }
+
+    @Nonnull
+    private static List<String> sortedCopy(@Nonnull List<String> list) {
+        List<String> copy = new ArrayList<String>(list);
+        Collections.sort(copy);
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Returns true if no problems were found.
+     */
+    public boolean isSuccessful() {
+        return missingMessages.isEmpty() && malformedPatterns.isEmpty();
+    }
+
+    /**
+     * Returns the locales that were warmed up. With a custom {@link MessageSource} this is
+     * only the locale of the provider, whatever locales were requested.
+     */
+    @Nonnull
+    public List<Locale> getLocales() {
+        return locales;
+    }
+
+    /**
+     * Returns descriptions of the messages that have neither a localization nor a default
+     * message for some locale, and would thus be rendered as {@code ???key???}.
+     */
+    @Nonnull
+    public List<String> getMissingMessages() {
+        return missingMessages;
+    }
+
+    /**
+     * Returns descriptions of the messages whose patterns could not be parsed.
+     */
+    @Nonnull
+    public List<String> getMalformedPatterns() {
+        return malformedPatterns;
+    }
+
+    /**
+     * Returns the time spent creating the Messages-objects, in nanoseconds.
+     */
+    public long getCreationNanos() {
+        return creationNanos;
+    }
+
+    /**
+     * Returns the time spent loading the resource bundles, in nanoseconds.
+     */
+    public long getBundleLoadingNanos() {
+        return bundleLoadingNanos;
+    }
+
+    /**
+     * Returns the time spent resolving and compiling the patterns, in nanoseconds.
+     */
+    public long getPatternCompilationNanos() {
+        return patternCompilationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmupReport[locales=" + locales
+            + ", missingMessages=" + missingMessages.size()
+            + ", malformedPatterns=" + malformedPatterns.size()
+            + ", creationNanos=" + creationNanos
+            + ", bundleLoadingNanos=" + bundleLoadingNanos
+            + ", patternCompilationNanos=" + patternCompilationNanos + "]";
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncMessageSourceTest {
+
+    private static final Locale FINNISH = new Locale("fi");
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final FixedLocaleProvider localeProvider = new FixedLocaleProvider(FINNISH);
+
+    private final MockLoader loader = new MockLoader();
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void lookupsDontBlockWhileMessagesAreLoaded() throws Exception {
+        CountDownLatch release = loader.block();
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+
+        assertThat(source.getMessage("foo"), is(nullValue()));
+        assertThat(source.isLoaded(FINNISH), is(false));
+
+        release.countDown();
+        source.prefetch(FINNISH).get();
+
+        assertThat(source.getMessage("foo"), is("foo 1"));
+        assertThat(loader.loads.get(), is(1));
+    }
+
+    @Test
+    public void concurrentPrefetchesShareTheLoad() throws Exception {
+        CountDownLatch release = loader.block();
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+
+        Future<Void> first = source.prefetch(FINNISH);
+        Future<Void> second = source.prefetch(FINNISH);
+        release.countDown();
+        first.get();
+        second.get();
+
+        assertThat(loader.loads.get(), is(1));
+        assertThat(source.isLoaded(FINNISH), is(true));
+    }
+
+    @Test
+    public void staleMessagesAreServedWhileTheyAreReloaded() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.NANOSECONDS);
+        source.prefetch(FINNISH).get();
+
+        CountDownLatch release = loader.block();
+        Thread.sleep(1);
+        assertThat(source.getMessage("foo"), is("foo 1"));
+
+        // Joins the reload started by the lookup, which is blocked until released
+        Future<Void> reload = source.refresh(FINNISH);
+        release.countDown();
+        reload.get();
+        assertThat(source.getMessage("foo"), is("foo 2"));
+    }
+
+    @Test
+    public void prefetchingFreshMessagesDoesNothing() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+        source.prefetch(FINNISH).get();
+        source.prefetch(FINNISH).get();
+
+        assertThat(loader.loads.get(), is(1));
+
+        source.refresh(FINNISH).get();
+        assertThat(source.getMessage("foo"), is("foo 2"));
+    }
+
+    @Test
+    public void failedLoadsAreReportedAndOldMessagesKept() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+        source.prefetch(FINNISH).get();
+
+        loader.fail = true;
+        try {
+            source.refresh(FINNISH).get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), is("load failed"));
+        }
+
+        assertThat(source.getMessage("foo"), is("foo 1"));
+    }
+
+    @Test
+    public void failedFirstLoadsAreNotRetriedByEachLookup() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+        loader.fail = true;
+
+        try {
+            source.prefetch(FINNISH).get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), is("load failed"));
+        }
+
+        assertThat(source.getMessage("foo"), is(nullValue()));
+        assertThat(source.getMessage("foo"), is(nullValue()));
+        assertThat(source.isLoaded(FINNISH), is(false));
+        assertThat(loader.attempts.get(), is(1));
+
+        // Explicit prefetches still try again
+        loader.fail = false;
+        source.prefetch(FINNISH).get();
+        assertThat(source.getMessage("foo"), is("foo 1"));
+    }
+
+    @Test
+    public void lookupsDontFailWhenTheExecutorRejectsLoads() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.NANOSECONDS);
+        source.prefetch(FINNISH).get();
+        executor.shutdown();
+
+        Thread.sleep(1);
+        assertThat(source.getMessage("foo"), is("foo 1"));
+
+        localeProvider.setLocale(Locale.GERMAN);
+        assertThat(source.getMessage("foo"), is(nullValue()));
+    }
+
+    @Test
+    public void sharedLoadsCantBeCancelledByCallers() throws Exception {
+        CountDownLatch release = loader.block();
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+
+        Future<Void> load = source.prefetch(FINNISH);
+        assertThat(load.cancel(true), is(false));
+        release.countDown();
+        load.get();
+
+        assertThat(source.isLoaded(FINNISH), is(true));
+    }
+
+    @Test
+    public void loadsCancelledByTheExecutorAreStartedAgain() throws Exception {
+        Executor cancellingExecutor = new Executor() {
+            private boolean first = true;
+
+            @Override
+            public synchronized void execute(@Nonnull Runnable task) {
+                if (first) {
+                    first = false;
+                    ((Future<?>) task).cancel(false);
+                } else {
+                    executor.execute(task);
+                }
+            }
+        };
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, cancellingExecutor, 1, TimeUnit.HOURS);
+
+        assertThat(source.prefetch(FINNISH).isCancelled(), is(true));
+
+        source.prefetch(FINNISH).get();
+        assertThat(source.isLoaded(FINNISH), is(true));
+    }
+
+    @Test
+    public void loadsDiscardedByTheExecutorAreStartedAgainAfterMaxAge() throws Exception {
+        Executor discardingExecutor = new Executor() {
+            private boolean first = true;
+
+            @Override
+            public synchronized void execute(@Nonnull Runnable task) {
+                if (first)
+                    first = false;
+                else
+                    executor.execute(task);
+            }
+        };
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, discardingExecutor, 1, TimeUnit.MILLISECONDS);
+
+        Future<Void> discarded = source.prefetch(FINNISH);
+        Thread.sleep(10);
+
+        source.prefetch(FINNISH).get();
+        assertThat(source.isLoaded(FINNISH), is(true));
+        assertThat(discarded.isCancelled(), is(true));
+    }
+
+    @Test
+    public void batchesAreLookedUpFromLoadedMessages() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+        assertThat(source.getMessages(asList("foo", "bar")), is(Collections.<String, String>emptyMap()));
+
+        source.prefetch(FINNISH).get();
+        Map<String, String> messages = source.getMessages(asList("foo", "unknown"));
+
+        assertThat(messages, is(Collections.singletonMap("foo", "foo 1")));
+    }
+
+    @Test
+    public void providersCreateMessagesWhenMessagesHaveBeenLoaded() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+        MessagesProvider provider = new MessagesProvider(source, localeProvider);
+
+        ExecutorService creator = Executors.newSingleThreadExecutor();
+        try {
+            TestMessages messages = provider.createAsync(TestMessages.class, creator).get();
+            assertThat(messages.foo(), is("foo 1"));
+        } finally {
+            creator.shutdownNow();
+        }
+    }
+
+    @Test
+    public void messagesCanBeCreatedUsingTheExecutorOfTheSource() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+        MessagesProvider provider = new MessagesProvider(source, localeProvider);
+
+        // The load is queued behind the creation task in the same single thread
+        TestMessages messages = provider.createAsync(TestMessages.class, executor).get(10, TimeUnit.SECONDS);
+        assertThat(messages.foo(), is("foo 1"));
+    }
+
+    @Test
+    public void providersPrefetchTheLocaleOfTheSource() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+        MessagesProvider provider = new MessagesProvider(source, new FixedLocaleProvider(Locale.GERMAN));
+
+        TestMessages messages = provider.createAsync(TestMessages.class, executor).get(10, TimeUnit.SECONDS);
+
+        assertThat(source.isLoaded(FINNISH), is(true));
+        assertThat(source.isLoaded(Locale.GERMAN), is(false));
+        assertThat(messages.foo(), is("foo 1"));
+    }
+
+    @Test
+    public void failedLoadsFailAsynchronousCreation() throws Exception {
+        AsyncMessageSource source = new AsyncMessageSource(loader, localeProvider, executor, 1, TimeUnit.HOURS);
+        MessagesProvider provider = new MessagesProvider(source, localeProvider);
+        loader.fail = true;
+
+        try {
+            provider.createAsync(TestMessages.class, executor).get(10, TimeUnit.SECONDS);
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), is("load failed"));
+        }
+    }
+
+    private static final class MockLoader implements AsyncMessageSource.Loader {
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        private volatile CountDownLatch latch = new CountDownLatch(0);
+
+        private volatile boolean fail = false;
+
+        CountDownLatch block() {
+            latch = new CountDownLatch(1);
+            return latch;
+        }
+
+        @Nonnull
+        @Override
+        public Map<String, String> loadMessages(@Nonnull Locale locale) throws Exception {
+            latch.await();
+            attempts.incrementAndGet();
+            if (fail)
+                throw new Exception("load failed");
+
+            Map<String, String> messages = new HashMap<String, String>();
+            messages.put("foo", "foo " + loads.incrementAndGet());
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CatalogMessageSourceTest {
+
+    private final FixedLocaleProvider localeProvider = new FixedLocaleProvider(Locale.ROOT);
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("lokki", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    @Test
+    public void compiledBundlesAreReadFromMappedCatalog() throws IOException {
+        write("messages.properties", "foo=root foo\nbar=root bar\nbaz=root baz\n");
+        write("messages_fi.properties", "foo=fi foo\nbar=fi bar\n");
+        write("messages_fi_FI.properties", "foo=fi_FI foo\n");
+        write("other_fi.properties", "quux=other\n");
+
+        File catalog = new File(directory, "messages.catalog");
+        MessageCatalogCompiler.compile(directory, "messages", catalog);
+        CatalogMessageSource source = new CatalogMessageSource(catalog, localeProvider);
+
+        Locale locale = new Locale("fi", "FI");
+        assertThat(source.getMessage("foo", locale), is("fi_FI foo"));
+        assertThat(source.getMessage("bar", locale), is("fi bar"));
+        assertThat(source.getMessage("baz", locale), is("root baz"));
+        assertThat(source.getMessage("foo", Locale.GERMAN), is("root foo"));
+        assertThat(source.getMessage("quux", locale), is(nullValue()));
+    }
+
+    @Test
+    public void messagesAreLookedUpUsingLocaleOfProvider() throws IOException {
+        CatalogMessageSource source = catalogOf("", "foo", "root", "de", "foo", "de");
+
+        assertThat(source.getMessage("foo"), is("root"));
+        localeProvider.setLocale(Locale.GERMANY);
+        assertThat(source.getMessage("foo"), is("de"));
+    }
+
+    @Test
+    public void nonAsciiStringsAreSupported() throws IOException {
+        CatalogMessageSource source = catalogOf("", "käyttäjä", "€ åäö 𝄞");
+
+        assertThat(source.getMessage("käyttäjä"), is("€ åäö 𝄞"));
+    }
+
+    @Test
+    public void keysWithSameHashAreDistinguished() throws IOException {
+        assertThat("Aa".hashCode(), is("BB".hashCode()));
+
+        CatalogMessageSource source = catalogOf("", "Aa", "first", "", "BB", "second", "", "AaBB", "third", "", "BBAa", "fourth");
+
+        assertThat(source.getMessage("Aa"), is("first"));
+        assertThat(source.getMessage("BB"), is("second"));
+        assertThat(source.getMessage("AaBB"), is("third"));
+        assertThat(source.getMessage("BBAa"), is("fourth"));
+        assertThat(source.getMessage("AaAa"), is(nullValue()));
+    }
+
+    @Test
+    public void manyKeysCanBeLookedUp() throws IOException {
+        Map<String, String> messages = new HashMap<String, String>();
+        for (int i = 0; i < 1000; i++)
+            messages.put("key" + i, "message " + i);
+
+        Map<String, Map<String, String>> messagesByLocale = new HashMap<String, Map<String, String>>();
+        messagesByLocale.put("", messages);
+        CatalogMessageSource source = catalogOf(messagesByLocale);
+
+        for (int i = 0; i < 1000; i++)
+            assertThat(source.getMessage("key" + i), is("message " + i));
+        assertThat(source.getMessage("key1000"), is(nullValue()));
+    }
+
+    @Test
+    public void batchesOfMessagesAreLookedUpUsingLocaleOfProvider() throws IOException {
+        CatalogMessageSource source = catalogOf("", "foo", "root foo", "", "bar", "root bar", "de", "foo", "de foo");
+        localeProvider.setLocale(Locale.GERMANY);
+
+        Map<String, String> messages = source.getMessages(asList("foo", "bar", "baz"));
+
+        assertThat(messages.size(), is(2));
+        assertThat(messages.get("foo"), is("de foo"));
+        assertThat(messages.get("bar"), is("root bar"));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidCatalogsAreRejected() throws IOException {
+        new CatalogMessageSource(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }), localeProvider);
+    }
+
+    /**
+     * Creates a catalog of locale name, key and message triples.
+     */
+    private CatalogMessageSource catalogOf(String... triples) throws IOException {
+        Map<String, Map<String, String>> messagesByLocale = new HashMap<String, Map<String, String>>();
+        for (int i = 0; i < triples.length; i += 3) {
+            Map<String, String> messages = messagesByLocale.get(triples[i]);
+            if (messages == null) {
+                messages = new HashMap<String, String>();
+                messagesByLocale.put(triples[i], messages);
+            }
+            messages.put(triples[i + 1], triples[i + 2]);
+        }
+        return catalogOf(messagesByLocale);
+    }
+
+    private CatalogMessageSource catalogOf(Map<String, Map<String, String>> messagesByLocale) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageCatalogCompiler.write(messagesByLocale, out);
+        return new CatalogMessageSource(ByteBuffer.wrap(out.toByteArray()), localeProvider);
+    }
+
+    private void write(String name, String contents) throws IOException {
+        OutputStream out = new FileOutputStream(new File(directory, name));
+        try {
+            out.write(contents.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+    }
+}
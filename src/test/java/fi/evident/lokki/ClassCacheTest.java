@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ClassCacheTest {
+
+    private int computeCount = 0;
+
+    private final ClassCache<Object> cache = new ClassCache<Object>() {
+        @Nonnull
+        @Override
+        protected Object computeValue(@Nonnull Class<?> cl) {
+            computeCount++;
+            return cl.getName() + computeCount;
+        }
+    };
+
+    @Test
+    public void valuesAreComputedOnlyOnce() {
+        Object value = cache.get(String.class);
+
+        assertThat(cache.get(String.class), is(sameInstance(value)));
+        assertThat(computeCount, is(1));
+    }
+
+    @Test
+    public void valuesAreComputedSeparatelyForEachClass() {
+        assertThat(cache.get(String.class), is((Object) "java.lang.String1"));
+        assertThat(cache.get(Integer.class), is((Object) "java.lang.Integer2"));
+    }
+
+    @Test
+    public void computedValuesCanBeListed() {
+        cache.get(String.class);
+        cache.get(Integer.class);
+
+        assertThat(new HashSet<Object>(cache.values()), is((Set<Object>) new HashSet<Object>(asList("java.lang.String1", "java.lang.Integer2"))));
+    }
+
+    @Test
+    public void concurrentLookupsSeeTheSameValue() throws InterruptedException {
+        final Object value = cache.get(String.class);
+        final AtomicInteger mismatches = new AtomicInteger();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++)
+                        if (cache.get(String.class) != value)
+                            mismatches.incrementAndGet();
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(mismatches.get(), is(0));
+        assertThat(computeCount, is(1));
+    }
+}
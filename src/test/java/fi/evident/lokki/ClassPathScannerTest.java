@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import fi.evident.lokki.scan.NotMessages;
+import fi.evident.lokki.scan.ScannedMessages;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ClassPathScannerTest {
+
+    @Test
+    public void classesAreFoundFromDirectoriesIncludingSubpackages() throws IOException {
+        Set<String> classNames = ClassPathScanner.findClassNames(getClass().getClassLoader(), "fi.evident.lokki.scan");
+
+        assertThat(classNames, is((Set<String>) new TreeSet<String>(Arrays.asList(
+            "fi.evident.lokki.scan.NotMessages",
+            "fi.evident.lokki.scan.ScannedMessages",
+            "fi.evident.lokki.scan.ScannedMessages$NestedMessages",
+            "fi.evident.lokki.scan.sub.SubpackageMessages"))));
+    }
+
+    @Test
+    public void classesAreFoundFromJars() throws IOException {
+        File jar = File.createTempFile("lokki", ".jar");
+        try {
+            writeJar(jar, ScannedMessages.class, NotMessages.class);
+
+            ClassLoader loader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, null);
+            Set<String> classNames = ClassPathScanner.findClassNames(loader, "fi.evident");
+
+            assertThat(classNames, is((Set<String>) new TreeSet<String>(Arrays.asList(
+                "fi.evident.lokki.scan.NotMessages",
+                "fi.evident.lokki.scan.ScannedMessages"))));
+        } finally {
+            assertTrue(jar.delete());
+        }
+    }
+
+    @Test
+    public void unknownPackagesHaveNoClasses() throws IOException {
+        assertThat(ClassPathScanner.findClassNames(getClass().getClassLoader(), "fi.evident.nonexistent").isEmpty(), is(true));
+    }
+
+    private static void writeJar(File file, Class<?>... classes) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (String directory : Arrays.asList("fi/", "fi/evident/", "fi/evident/lokki/", "fi/evident/lokki/scan/")) {
+                out.putNextEntry(new JarEntry(directory));
+                out.closeEntry();
+            }
+
+            for (Class<?> cl : classes) {
+                String name = cl.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new JarEntry(name));
+
+                InputStream in = cl.getClassLoader().getResourceAsStream(name);
+                try {
+                    byte[] buffer = new byte[4096];
+                    for (int n; (n = in.read(buffer)) != -1; )
+                        out.write(buffer, 0, n);
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CompiledPatternTest {
+
+    private static final Object[] ARGS = { "foo", null, 'x', true };
+
+    @Test
+    public void simplePatternsAreCompiled() {
+        assertCompiledLikeMessageFormat("");
+        assertCompiledLikeMessageFormat("no arguments");
+        assertCompiledLikeMessageFormat("{0}");
+        assertCompiledLikeMessageFormat("{0} and {1}, {2}{3}{0}");
+        assertCompiledLikeMessageFormat("missing {5} argument");
+        assertCompiledLikeMessageFormat("unmatched } brace");
+    }
+
+    @Test
+    public void quotesAreHandledLikeMessageFormat() {
+        assertCompiledLikeMessageFormat("it's {0}");
+        assertCompiledLikeMessageFormat("it''s {0}");
+        assertCompiledLikeMessageFormat("'{0}' is {0}");
+        assertCompiledLikeMessageFormat("'quoted '' {1}' {0}");
+        assertCompiledLikeMessageFormat("''''");
+        assertCompiledLikeMessageFormat("unterminated '{0}");
+    }
+
+    @Test
+    public void patternsWithSubformatsAreNotCompiled() {
+        assertThat(CompiledPattern.compile("{0,number}"), is(nullValue()));
+        assertThat(CompiledPattern.compile("{0,choice,0#none|1#one}"), is(nullValue()));
+        assertThat(CompiledPattern.compile("{0,date,short}"), is(nullValue()));
+        assertThat(CompiledPattern.compile("{ 0}"), is(nullValue()));
+        assertThat(CompiledPattern.compile("{'0'}"), is(nullValue()));
+        assertThat(CompiledPattern.compile("unmatched {0"), is(nullValue()));
+    }
+
+    @Test
+    public void numbersAndDatesAreLeftToMessageFormat() {
+        CompiledPattern pattern = CompiledPattern.compile("{0}");
+
+        assertThat(pattern.canFormat(new Object[] { "foo" }), is(true));
+        assertThat(pattern.canFormat(new Object[] { 42 }), is(false));
+        assertThat(pattern.canFormat(new Object[] { new Date() }), is(false));
+        assertThat(CompiledPattern.compile("{1}").canFormat(new Object[] { 42 }), is(true));
+    }
+
+    private static void assertCompiledLikeMessageFormat(String pattern) {
+        CompiledPattern compiled = CompiledPattern.compile(pattern);
+
+        assertThat(pattern, compiled, is(notNullValue()));
+        assertThat(pattern, compiled.format(ARGS), is(new MessageFormat(pattern, Locale.ROOT).format(ARGS)));
+    }
+}
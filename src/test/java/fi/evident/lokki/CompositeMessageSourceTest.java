@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CompositeMessageSourceTest {
+
+    private final FixedLocaleProvider localeProvider = new FixedLocaleProvider(Locale.ENGLISH);
+
+    private final MockMessageSource overrides = new MockMessageSource();
+    private final MockMessageSource tenant = new MockMessageSource();
+    private final MockMessageSource defaults = new MockMessageSource();
+
+    private final CompositeMessageSource source = new CompositeMessageSource(localeProvider, overrides, tenant, defaults);
+
+    @Test
+    public void messagesAreTakenFromTheFirstLayerThatHasThem() {
+        overrides.setMessage("foo", "override foo");
+        tenant.setMessage("foo", "tenant foo");
+        tenant.setMessage("bar", "tenant bar");
+        defaults.setMessage("bar", "default bar");
+        defaults.setMessage("baz", "default baz");
+
+        assertThat(source.getMessage("foo"), is("override foo"));
+        assertThat(source.getMessage("bar"), is("tenant bar"));
+        assertThat(source.getMessage("baz"), is("default baz"));
+        assertThat(source.getMessage("quux"), is(nullValue()));
+    }
+
+    @Test
+    public void lookupsAreMemoized() {
+        defaults.setMessage("foo", "default foo");
+
+        source.getMessage("foo");
+        source.getMessage("foo");
+        source.getMessage("unknown");
+        source.getMessage("unknown");
+
+        assertThat(overrides.lookups, is(2));
+        assertThat(defaults.lookups, is(2));
+    }
+
+    @Test
+    public void numberOfMemoizedMissingKeysIsBoundedPerLocale() {
+        CompositeMessageSource source = new CompositeMessageSource(localeProvider, asList(overrides, defaults), 2);
+        defaults.setMessage("foo", "default foo");
+
+        source.getMessage("unknown1");
+        source.getMessage("unknown2");
+        source.getMessage("unknown3");
+        source.getMessage("unknown3");
+        assertThat(source.getMessage("foo"), is("default foo"));
+
+        assertThat(source.getMemoizedCount(Locale.ENGLISH), is(3));
+        assertThat(defaults.lookups, is(5));
+
+        localeProvider.setLocale(Locale.GERMAN);
+        source.getMessage("unknown3");
+        assertThat(source.getMemoizedCount(Locale.GERMAN), is(1));
+    }
+
+    @Test
+    public void lookupsAreMemoizedPerLocale() {
+        source.getMessage("foo");
+        localeProvider.setLocale(Locale.GERMAN);
+        source.getMessage("foo");
+
+        assertThat(overrides.lookups, is(2));
+    }
+
+    @Test
+    public void invalidatingLayerRevealsItsChanges() {
+        tenant.setMessage("foo", "tenant foo");
+        defaults.setMessage("bar", "default bar");
+        assertThat(source.getMessage("foo"), is("tenant foo"));
+        assertThat(source.getMessage("bar"), is("default bar"));
+        assertThat(source.getMessage("baz"), is(nullValue()));
+
+        tenant.setMessage("foo", "new tenant foo");
+        tenant.setMessage("bar", "tenant bar");
+        tenant.setMessage("baz", "tenant baz");
+        source.invalidate(tenant);
+
+        assertThat(source.getMessage("foo"), is("new tenant foo"));
+        assertThat(source.getMessage("bar"), is("tenant bar"));
+        assertThat(source.getMessage("baz"), is("tenant baz"));
+    }
+
+    @Test
+    public void invalidatingLayerKeepsMessagesOfLayersAboveIt() {
+        overrides.setMessage("foo", "override foo");
+        defaults.setMessage("bar", "default bar");
+        source.getMessage("foo");
+        source.getMessage("bar");
+
+        source.invalidate(defaults);
+        source.getMessage("foo");
+        source.getMessage("bar");
+
+        assertThat(overrides.lookups, is(3));
+    }
+
+    @Test
+    public void invalidatingAllLayersDiscardsEverything() {
+        overrides.setMessage("foo", "old");
+        source.getMessage("foo");
+
+        overrides.setMessage("foo", "new");
+        source.invalidateAll();
+
+        assertThat(source.getMessage("foo"), is("new"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyLayersCanBeInvalidated() {
+        source.invalidate(new MockMessageSource());
+    }
+
+    @Test
+    public void batchesAreResolvedThroughTheMergedView() {
+        overrides.setMessage("foo", "override foo");
+        defaults.setMessage("bar", "default bar");
+
+        Map<String, String> messages = source.getMessages(asList("foo", "bar", "baz"));
+
+        assertThat(messages.size(), is(2));
+        assertThat(messages.get("foo"), is("override foo"));
+        assertThat(messages.get("bar"), is("default bar"));
+
+        source.getMessages(asList("foo", "bar", "baz"));
+        assertThat(overrides.lookups, is(3));
+    }
+
+    private static class MockMessageSource implements MessageSource {
+
+        private final Map<String, String> messages = new HashMap<String, String>();
+
+        private int lookups = 0;
+
+        @Nullable
+        @Override
+        public String getMessage(@Nonnull String key) {
+            lookups++;
+            return messages.get(key);
+        }
+
+        public void setMessage(String key, String message) {
+            messages.put(key, message);
+        }
+    }
+}
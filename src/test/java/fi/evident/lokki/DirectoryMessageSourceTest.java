@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryMessageSourceTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("lokki", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    @Test
+    public void messagesAreSearchedFromMostSpecificFileFirst() throws IOException {
+        write("messages.properties", "foo=root foo\nbar=root bar\nbaz=root baz\n");
+        write("messages_fi.properties", "foo=fi foo\nbar=fi bar\n");
+        write("messages_fi_FI.properties", "foo=fi_FI foo\n");
+        write("other.properties", "quux=other\n");
+
+        DirectoryMessageSource source = createSource();
+        Locale locale = new Locale("fi", "FI");
+
+        assertThat(source.getMessage("foo", locale), is("fi_FI foo"));
+        assertThat(source.getMessage("bar", locale), is("fi bar"));
+        assertThat(source.getMessage("baz", locale), is("root baz"));
+        assertThat(source.getMessage("foo", Locale.GERMAN), is("root foo"));
+        assertThat(source.getMessage("quux", locale), is(nullValue()));
+    }
+
+    @Test
+    public void batchesOfMessagesAreSearchedFromMostSpecificFileFirst() throws IOException {
+        write("messages.properties", "foo=root foo\nbar=root bar\nbaz=root baz\n");
+        write("messages_fi.properties", "foo=fi foo\nbar=fi bar\n");
+        write("messages_fi_FI.properties", "foo=fi_FI foo\n");
+
+        DirectoryMessageSource source = new DirectoryMessageSource(directory, "messages", new FixedLocaleProvider(new Locale("fi", "FI")));
+        Map<String, String> messages = source.getMessages(asList("foo", "bar", "baz", "quux"));
+
+        assertThat(messages.size(), is(3));
+        assertThat(messages.get("foo"), is("fi_FI foo"));
+        assertThat(messages.get("bar"), is("fi bar"));
+        assertThat(messages.get("baz"), is("root baz"));
+    }
+
+    @Test
+    public void changedFilesAreReloaded() throws IOException {
+        File file = write("messages.properties", "foo=old\n");
+        DirectoryMessageSource source = createSource();
+
+        write("messages.properties", "foo=new message\n");
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+
+        assertThat(source.checkForChanges(), is(true));
+        assertThat(source.getMessage("foo", Locale.ROOT), is("new message"));
+    }
+
+    @Test
+    public void unchangedFilesAreNotReloaded() throws IOException {
+        write("messages.properties", "foo=root\n");
+        File file = write("messages_fi.properties", "foo=old\n");
+        DirectoryMessageSource source = createSource();
+
+        // Same length and modification time, so the file looks unchanged
+        long lastModified = file.lastModified();
+        write("messages_fi.properties", "foo=new\n");
+        assertTrue(file.setLastModified(lastModified));
+
+        assertThat(source.checkForChanges(), is(false));
+        assertThat(source.getMessage("foo", new Locale("fi")), is("old"));
+    }
+
+    @Test
+    public void addedAndRemovedFilesArePickedUp() throws IOException {
+        File file = write("messages.properties", "foo=root\n");
+        DirectoryMessageSource source = createSource();
+
+        write("messages_fi.properties", "foo=fi\n");
+        assertThat(source.checkForChanges(), is(true));
+        assertThat(source.getMessage("foo", new Locale("fi")), is("fi"));
+
+        assertTrue(file.delete());
+        assertThat(source.checkForChanges(), is(true));
+        assertThat(source.getMessage("foo", Locale.ROOT), is(nullValue()));
+    }
+
+    @Test
+    public void messagesAreLookedUpUsingLocaleOfProvider() throws IOException {
+        write("messages.properties", "foo=root\n");
+        write("messages_fi.properties", "foo=fi\n");
+
+        DirectoryMessageSource source = new DirectoryMessageSource(directory, "messages", new FixedLocaleProvider(new Locale("fi")));
+
+        assertThat(source.getMessage("foo"), is("fi"));
+    }
+
+    private DirectoryMessageSource createSource() throws IOException {
+        return new DirectoryMessageSource(directory, "messages", new FixedLocaleProvider(Locale.ROOT));
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File file = new File(directory, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
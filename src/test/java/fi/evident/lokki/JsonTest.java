@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class JsonTest {
+
+    @Test
+    public void plainStringsAreQuoted() throws IOException {
+        assertThat(json("Hello, {0}!"), is("\"Hello, {0}!\""));
+    }
+
+    @Test
+    public void specialCharactersAreEscaped() throws IOException {
+        assertThat(json("\"quoted\" \\ line\nnext\ttab"), is("\"\\\"quoted\\\" \\\\ line\\nnext\\ttab\""));
+        assertThat(json("\u0001"), is("\"\\u0001\""));
+    }
+
+    @Test
+    public void htmlAndJavaScriptSensitiveCharactersAreEscaped() throws IOException {
+        assertThat(json("</script>&\u2028"), is("\"\\u003c/script\\u003e\\u0026\\u2028\""));
+    }
+
+    @Test
+    public void nonAsciiCharactersAreWrittenAsIs() throws IOException {
+        assertThat(json("äö €"), is("\"äö €\""));
+    }
+
+    private static String json(String s) throws IOException {
+        StringWriter writer = new StringWriter();
+        Json.writeString(s, writer);
+        return writer.toString();
+    }
+}
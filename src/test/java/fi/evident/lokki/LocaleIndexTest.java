@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LocaleIndexTest {
+
+    private final LocaleIndex index = new LocaleIndex(asList(Locale.ENGLISH, Locale.GERMAN, new Locale("fi", "FI")), Locale.ENGLISH);
+
+    @Test
+    public void supportedLocalesAreIndexedInOrder() {
+        assertThat(index.size(), is(3));
+        assertThat(index.indexOf(Locale.ENGLISH), is(0));
+        assertThat(index.indexOf(Locale.GERMAN), is(1));
+        assertThat(index.indexOf(new Locale("fi", "FI")), is(2));
+        assertThat(index.getLocale(1), is(Locale.GERMAN));
+    }
+
+    @Test
+    public void localesWithSupportedLanguageAreMappedToTheLanguage() {
+        assertThat(index.indexOf(Locale.GERMANY), is(1));
+        assertThat(index.indexOf(new Locale("fi")), is(2));
+    }
+
+    @Test
+    public void unsupportedLocalesAreMappedToFallback() {
+        assertThat(index.indexOf(Locale.JAPANESE), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fallbackLocaleMustBeSupported() {
+        new LocaleIndex(asList(Locale.ENGLISH, Locale.GERMAN), Locale.FRENCH);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MessageDescriptorTest {
+
+    @Test
+    public void nameOfMethodIsUsedAsDefaultKey() throws Exception {
+        MessageDescriptor descriptor = descriptorFor("foo");
+
+        assertThat(descriptor.getKey(), is("foo"));
+        assertThat(descriptor.getDefaultMessage(), is(nullValue()));
+        assertThat(descriptor.getArgumentCount(), is(0));
+    }
+
+    @Test
+    public void keyIsReadFromAnnotation() throws Exception {
+        assertThat(descriptorFor("messageWithKey").getKey(), is("bar"));
+    }
+
+    @Test
+    public void defaultMessageIsReadFromAnnotation() throws Exception {
+        assertThat(descriptorFor("defaultMessage").getDefaultMessage(), is("my default message"));
+    }
+
+    @Test
+    public void argumentsAreCounted() throws Exception {
+        MessageDescriptor descriptor =
+            MessageDescriptor.forMethod(TestMessages.class.getMethod("messageWithParameters", String.class, int.class));
+
+        assertThat(descriptor.getArgumentCount(), is(2));
+    }
+
+    @Test
+    public void missingMessageContainsTheKey() throws Exception {
+        assertThat(descriptorFor("unknown").getMissingMessage(), is("???unknown???"));
+    }
+
+    private static MessageDescriptor descriptorFor(String methodName) throws NoSuchMethodException {
+        return MessageDescriptor.forMethod(TestMessages.class.getMethod(methodName));
+    }
+}
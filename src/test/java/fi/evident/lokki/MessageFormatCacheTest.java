@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MessageFormatCacheTest {
+
+    private final MessageFormatCache cache = new MessageFormatCache(2);
+
+    @Test
+    public void formatsArguments() {
+        assertThat(cache.format("{0} and {1}", Locale.ENGLISH, new Object[] { "foo", "bar" }), is("foo and bar"));
+    }
+
+    @Test
+    public void argumentsAreFormattedUsingGivenLocale() {
+        assertThat(cache.format("{0}", Locale.ENGLISH, new Object[] { 1234 }), is("1,234"));
+        assertThat(cache.format("{0}", Locale.GERMAN, new Object[] { 1234 }), is("1.234"));
+    }
+
+    @Test
+    public void subformatsAreSupported() {
+        String pattern = "{0,choice,0#no files|1#one file|1<{0,number,integer} files}";
+
+        assertThat(cache.format(pattern, Locale.ENGLISH, new Object[] { 1 }), is("one file"));
+        assertThat(cache.format(pattern, Locale.ENGLISH, new Object[] { 1234 }), is("1,234 files"));
+    }
+
+    @Test
+    public void simplePatternsFormatNumbersUsingLocale() {
+        assertThat(cache.format("{0} / {1}", Locale.GERMAN, new Object[] { "foo", 1234 }), is("foo / 1.234"));
+        assertThat(cache.format("{0} / {1}", Locale.GERMAN, new Object[] { "foo", "bar" }), is("foo / bar"));
+    }
+
+    @Test
+    public void parsedFormatsAreReused() {
+        cache.format("{0}", Locale.ENGLISH, new Object[] { "foo" });
+        cache.format("{0}", Locale.ENGLISH, new Object[] { "bar" });
+        cache.format("{0}", Locale.GERMAN, new Object[] { "baz" });
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertThat(statistics.getHitCount(), is(1L));
+        assertThat(statistics.getMissCount(), is(2L));
+        assertThat(statistics.getSize(), is(2));
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        cache.format("{0}", Locale.ENGLISH, new Object[] { "foo" });
+        cache.format("{0}!", Locale.ENGLISH, new Object[] { "foo" });
+        cache.format("{0}?", Locale.ENGLISH, new Object[] { "foo" });
+
+        assertThat(cache.getStatistics().getSize(), is(2));
+    }
+}
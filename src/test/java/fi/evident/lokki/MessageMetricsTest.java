@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MessageMetricsTest {
+
+    private static final Locale FINNISH = new Locale("fi");
+
+    private final MessageMetrics metrics = new MessageMetrics();
+
+    @Test
+    public void lookupsAreCountedPerKeyAndLocale() {
+        TestMessages messages = MessagesProvider.forLocale(FINNISH).withMetrics(metrics).create(TestMessages.class);
+
+        messages.foo();
+        messages.foo();
+        messages.messageWithKey();
+
+        assertThat(entry("foo", FINNISH).getLookupCount(), is(2L));
+        assertThat(entry("bar", FINNISH).getLookupCount(), is(1L));
+        assertThat(entry("foo", FINNISH).getDefaultMessageCount(), is(0L));
+        assertThat(entry("foo", FINNISH).getMissingCount(), is(0L));
+        assertThat(entry("unknown", FINNISH), is(nullValue()));
+    }
+
+    @Test
+    public void defaultMessagesAndMissingMessagesAreCounted() {
+        TestMessages messages = MessagesProvider.forLocale(FINNISH).withMetrics(metrics).create(TestMessages.class);
+
+        messages.defaultMessage();
+        messages.unknown();
+
+        assertThat(entry("defaultMessage", FINNISH).getDefaultMessageCount(), is(1L));
+        assertThat(entry("defaultMessage", FINNISH).getMissingCount(), is(0L));
+        assertThat(entry("unknown", FINNISH).getDefaultMessageCount(), is(0L));
+        assertThat(entry("unknown", FINNISH).getMissingCount(), is(1L));
+    }
+
+    @Test
+    public void formattingIsCountedOnlyForMessagesWithArguments() {
+        TestMessages messages = MessagesProvider.forLocale(FINNISH).withMetrics(metrics).create(TestMessages.class);
+
+        messages.foo();
+        messages.messageWithParameters("foo", 42);
+
+        assertThat(entry("foo", FINNISH).getFormatCount(), is(0L));
+        assertThat(entry("messageWithParameters", FINNISH).getFormatCount(), is(1L));
+        assertTrue(entry("messageWithParameters", FINNISH).getFormatNanos() >= 0);
+    }
+
+    @Test
+    public void supportedLocalesAreCountedByTheResolvedLocale() {
+        MessagesProvider provider = MessagesProvider.forSupportedLocales(
+            new FixedLocaleProvider(new Locale("fi", "FI")), Arrays.asList(Locale.ENGLISH, FINNISH), Locale.ENGLISH);
+        TestMessages messages = provider.withMetrics(metrics).create(TestMessages.class);
+
+        assertThat(messages.foo(), is("Foo-viesti"));
+        assertThat(messages.defaultMessage(), is("my default message"));
+
+        assertThat(entry("foo", FINNISH).getLookupCount(), is(1L));
+        assertThat(entry("defaultMessage", FINNISH).getDefaultMessageCount(), is(1L));
+    }
+
+    @Test
+    public void viewsRecordToTheSameMetrics() {
+        MessagesProvider provider = MessagesProvider.forDefaultLocale().withMetrics(metrics);
+
+        provider.create(TestMessages.class, FINNISH).foo();
+        provider.create(TestMessages.class, Locale.GERMAN).foo();
+
+        assertThat(entry("foo", FINNISH).getLookupCount(), is(1L));
+        assertThat(entry("foo", Locale.GERMAN).getLookupCount(), is(1L));
+    }
+
+    @Test
+    public void providersWithoutMetricsDontRecordAnything() {
+        MessagesProvider provider = MessagesProvider.forLocale(FINNISH);
+        provider.withMetrics(metrics);
+
+        provider.create(TestMessages.class).foo();
+
+        assertTrue(metrics.snapshot().isEmpty());
+    }
+
+    @Test
+    public void countsFromMultipleThreadsAreSummed() throws InterruptedException {
+        final TestMessages messages = MessagesProvider.forLocale(FINNISH).withMetrics(metrics).create(TestMessages.class);
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++)
+                        messages.foo();
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(entry("foo", FINNISH).getLookupCount(), is(4000L));
+    }
+
+    @Test
+    public void entriesIdentifyTheInterface() {
+        MessagesProvider.forLocale(FINNISH).withMetrics(metrics).create(TestMessages.class).foo();
+
+        MessageMetrics.Entry entry = entry("foo", FINNISH);
+        assertThat(entry, is(notNullValue()));
+        assertThat(entry.getInterfaceName(), is(TestMessages.class.getName()));
+    }
+
+    private MessageMetrics.Entry entry(String key, Locale locale) {
+        List<MessageMetrics.Entry> entries = metrics.snapshot();
+        for (MessageMetrics.Entry entry : entries)
+            if (entry.getKey().equals(key) && entry.getLocale().equals(locale))
+                return entry;
+        return null;
+    }
+}
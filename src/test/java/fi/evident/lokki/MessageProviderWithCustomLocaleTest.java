@@ -16,4 +16,12 @@ public class MessageProviderWithCustomLocaleTest {
 
         assertThat(messages.foo(), is("Die Foo Lokalisierung Nachricht"));
     }
+
+    @Test
+    public void argumentsAreFormattedUsingTheSpecifiedLocale() {
+        MessagesProvider messagesProvider = MessagesProvider.forLocale(Locale.GERMAN);
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+
+        assertThat(messages.messageWithParameters("foo", 1234), is("str: foo, x: 1.234"));
+    }
 }
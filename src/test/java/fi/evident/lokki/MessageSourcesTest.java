@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MessageSourcesTest {
+
+    @Test
+    public void keysAreLookedUpOneByOneFromPlainSources() {
+        MessageSource source = new MessageSource() {
+            @Nullable
+            @Override
+            public String getMessage(@Nonnull String key) {
+                return key.startsWith("known") ? key + " message" : null;
+            }
+        };
+
+        Map<String, String> messages = MessageSources.getMessages(source, asList("known1", "known2", "unknown"));
+
+        assertThat(messages.size(), is(2));
+        assertThat(messages.get("known1"), is("known1 message"));
+        assertThat(messages.get("known2"), is("known2 message"));
+    }
+
+    @Test
+    public void batchSourcesLookUpTheWholeBatch() {
+        MessageSource source = new BatchMessageSource() {
+            @Nonnull
+            @Override
+            public Map<String, String> getMessages(@Nonnull Collection<String> keys) {
+                return Collections.singletonMap("batch", String.valueOf(keys.size()));
+            }
+
+            @Nullable
+            @Override
+            public String getMessage(@Nonnull String key) {
+                throw new AssertionError("unexpected lookup of " + key);
+            }
+        };
+
+        assertThat(MessageSources.getMessages(source, asList("foo", "bar")), is(Collections.singletonMap("batch", "2")));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MessageTableTest {
+
+    private final MessageTable table = new MessageTable(
+        new ResourceBundleMessageSource(asList(TestMessages.class.getName()), new FixedLocaleProvider(Locale.ENGLISH)));
+
+    @Test
+    public void keysAreAssignedDenseSlots() {
+        assertThat(table.slotOf("foo"), is(0));
+        assertThat(table.slotOf("bar"), is(1));
+        assertThat(table.slotOf("foo"), is(0));
+        assertThat(table.slotOf("unknown"), is(2));
+    }
+
+    @Test
+    public void messagesAreLookedUpForEachLocale() {
+        int foo = table.slotOf("foo");
+        int unknown = table.slotOf("unknown");
+
+        assertThat(table.getMessage(foo, Locale.ENGLISH), is("The Foo Message"));
+        assertThat(table.getMessage(foo, Locale.GERMAN), is("Die Foo Lokalisierung Nachricht"));
+        assertThat(table.getMessage(unknown, Locale.ENGLISH), is(nullValue()));
+    }
+
+    @Test
+    public void keysBoundAfterLocaleHasBeenUsedAreFound() {
+        int foo = table.slotOf("foo");
+        assertThat(table.getMessage(foo, Locale.ENGLISH), is("The Foo Message"));
+
+        int bar = table.slotOf("bar");
+        assertThat(table.getMessage(bar, Locale.ENGLISH), is("The Bar Message"));
+        assertThat(table.getMessage(foo, Locale.ENGLISH), is("The Foo Message"));
+    }
+
+    @Test
+    public void alternatingLocalesSeeTheirOwnMessages() {
+        int foo = table.slotOf("foo");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(table.getMessage(foo, Locale.ENGLISH), is("The Foo Message"));
+            assertThat(table.getMessage(foo, Locale.GERMAN), is("Die Foo Lokalisierung Nachricht"));
+        }
+    }
+
+    @Test
+    public void lookupsRacingWithReloadsSeeTheMessages() throws Exception {
+        final int foo = table.slotOf("foo");
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        String message = table.getMessage(foo, Locale.ENGLISH);
+                        if (!"The Foo Message".equals(message))
+                            failure.set(message);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < 100; i++)
+            table.reload();
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(failure.get(), is(nullValue()));
+        assertThat(table.getMessage(foo, Locale.ENGLISH), is("The Foo Message"));
+    }
+}
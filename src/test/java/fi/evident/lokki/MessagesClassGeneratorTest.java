@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MessagesClassGeneratorTest {
+
+    private final MessagesProvider messagesProvider =
+        new MessagesProvider(new EmptyMessageSource(), new FixedLocaleProvider(Locale.ENGLISH));
+
+    @Test
+    public void classesAreGeneratedForPublicInterfaces() {
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+
+        assertThat(Proxy.isProxyClass(messages.getClass()), is(false));
+        assertThat(messages.getClass().getName(), is(TestMessages.class.getName() + MessagesClassGenerator.CLASS_NAME_SUFFIX));
+    }
+
+    @Test
+    public void generatedClassesAreReused() {
+        TestMessages messages1 = messagesProvider.create(TestMessages.class);
+        TestMessages messages2 = messagesProvider.create(TestMessages.class);
+
+        assertTrue(messages1.getClass() == messages2.getClass());
+    }
+
+    @Test
+    public void proxiesAreUsedForNonPublicInterfaces() {
+        NonPublicMessages messages = messagesProvider.create(NonPublicMessages.class);
+
+        assertThat(Proxy.isProxyClass(messages.getClass()), is(true));
+        assertThat(messages.foo(), is("foo"));
+    }
+
+    @Test
+    public void allParameterTypesArePassedToMessages() {
+        PrimitiveMessages messages = messagesProvider.create(PrimitiveMessages.class);
+
+        assertThat(messages.primitives(true, (byte) 1, 'c', (short) 2, 3, 4L, 5.5f, 6.5, "str"),
+                   is("true 1 c 2 3 4 5.5 6.5 str"));
+    }
+
+    @Test
+    public void mostSpecificDefaultMessageIsUsedForOverriddenMethods() {
+        InheritedTestMessages messages = messagesProvider.create(InheritedTestMessages.class);
+
+        assertThat(messages.defaultMessage(), is("overridden default message"));
+        assertThat(((TestMessages) messages).defaultMessage(), is("overridden default message"));
+    }
+
+    @Test
+    public void appendingMethodsAreImplemented() throws IOException {
+        AppendingMessages messages = messagesProvider.create(AppendingMessages.class);
+        assertThat(Proxy.isProxyClass(messages.getClass()), is(false));
+
+        StringBuilder sb = new StringBuilder();
+        messages.plain(sb);
+        messages.primitives(1.5, 2L, sb);
+        assertThat(sb.toString(), is("plain 1.5 2"));
+
+        StringWriter writer = new StringWriter();
+        messages.writer(3, writer);
+        assertThat(writer.toString(), is("3"));
+    }
+
+    public interface AppendingMessages extends Messages {
+        @DefaultMessage("plain")
+        void plain(StringBuilder out);
+
+        @DefaultMessage(" {0} {1}")
+        void primitives(double d, long j, StringBuilder out);
+
+        @DefaultMessage("{0}")
+        void writer(int i, Writer out) throws IOException;
+    }
+
+    public interface PrimitiveMessages extends Messages {
+        @DefaultMessage("{0} {1} {2} {3} {4} {5} {6} {7} {8}")
+        String primitives(boolean z, byte b, char c, short s, int i, long j, float f, double d, String str);
+    }
+
+    interface NonPublicMessages extends Messages {
+        @DefaultMessage("foo")
+        String foo();
+    }
+
+    private static class EmptyMessageSource implements MessageSource {
+        @Override
+        @Nullable
+        public String getMessage(@Nonnull String key) {
+            return null;
+        }
+    }
+}
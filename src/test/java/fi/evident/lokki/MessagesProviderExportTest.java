@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class MessagesProviderExportTest {
+
+    private static final Locale FINNISH = new Locale("fi");
+
+    private final MessagesProvider messagesProvider = MessagesProvider.forDefaultLocale();
+
+    @Test
+    public void messagesAreExportedAsJsonInOrderOfKeys() throws IOException {
+        assertThat(export(TestMessages.class, FINNISH),
+                   is("{\"bar\":\"Bar-viesti\",\"defaultMessage\":\"my default message\",\"foo\":\"Foo-viesti\","
+                      + "\"messageWithParameters\":\"str: {0}, x: {1}\"}"));
+    }
+
+    @Test
+    public void inheritedMessagesAndOverriddenDefaultsAreExported() throws IOException {
+        assertThat(export(InheritedTestMessages.class, Locale.ENGLISH),
+                   is("{\"bar\":\"The Overridden Bar Message\",\"baz\":\"The Baz Message\","
+                      + "\"defaultMessage\":\"overridden default message\",\"foo\":\"The Foo Message\","
+                      + "\"messageWithParameters\":\"str: {0}, x: {1}\"}"));
+    }
+
+    @Test
+    public void messagesAreExportedFromCustomSource() throws IOException {
+        MessagesProvider provider = new MessagesProvider(new MessageSource() {
+            @Override
+            public String getMessage(String key) {
+                return key.equals("foo") ? "custom \"foo\"" : null;
+            }
+        });
+
+        StringWriter writer = new StringWriter();
+        provider.exportMessages(TestMessages.class, Locale.ENGLISH, writer);
+
+        assertThat(writer.toString(), is("{\"bar\":\"a default message\",\"defaultMessage\":\"my default message\",\"foo\":\"custom \\\"foo\\\"\","
+                                         + "\"messageWithParameters\":\"str: {0}, x: {1}\"}"));
+    }
+
+    @Test
+    public void unsupportedLocalesExportTheMessagesOfTheirSupportedLocale() throws IOException {
+        MessagesProvider provider = MessagesProvider.forSupportedLocales(new FixedLocaleProvider(Locale.GERMAN),
+                                                                         asList(Locale.ENGLISH, FINNISH), Locale.ENGLISH);
+        assertThat(provider.create(TestMessages.class).foo(), is("The Foo Message"));
+
+        StringWriter writer = new StringWriter();
+        provider.exportMessages(TestMessages.class, Locale.GERMAN, writer);
+
+        assertThat(writer.toString().contains("\"foo\":\"The Foo Message\""), is(true));
+        assertThat(provider.getExportETag(TestMessages.class, Locale.GERMAN),
+                   is(provider.getExportETag(TestMessages.class, Locale.ENGLISH)));
+    }
+
+    @Test
+    public void streamsAreWrittenInUtf8() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        messagesProvider.exportMessages(TestMessages.class, FINNISH, out);
+
+        assertThat(new String(out.toByteArray(), "UTF-8"), is(export(TestMessages.class, FINNISH)));
+    }
+
+    @Test
+    public void eTagIsHashOfExportedMessages() throws Exception {
+        byte[] exported = export(TestMessages.class, FINNISH).getBytes("UTF-8");
+        String expected = String.format("%040x", new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(exported)));
+
+        assertThat(messagesProvider.getExportETag(TestMessages.class, FINNISH), is(expected));
+    }
+
+    @Test
+    public void eTagsDifferWhenMessagesDiffer() {
+        assertThat(messagesProvider.getExportETag(TestMessages.class, FINNISH),
+                   is(messagesProvider.getExportETag(TestMessages.class, FINNISH)));
+        assertThat(messagesProvider.getExportETag(TestMessages.class, FINNISH),
+                   is(not(messagesProvider.getExportETag(TestMessages.class, Locale.GERMAN))));
+    }
+
+    private String export(Class<? extends Messages> messagesClass, Locale locale) throws IOException {
+        StringWriter writer = new StringWriter();
+        messagesProvider.exportMessages(messagesClass, locale, writer);
+        return writer.toString();
+    }
+}
@@ -24,9 +24,18 @@ package fi.evident.lokki;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.List;
+import java.util.ListResourceBundle;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class MessagesProviderTest {
@@ -83,11 +92,92 @@ public class MessagesProviderTest {
         assertThat(inheritedMessages().defaultMessage(), is("overridden default message"));
     }
 
+    @Test
+    public void flattenedBundlesResolveInheritedMessages() {
+        InheritedTestMessages messages = messagesProvider.withFlattenedBundles().create(InheritedTestMessages.class);
+
+        assertThat(messages.foo(), is("The Foo Message"));
+        assertThat(messages.bar(), is("The Overridden Bar Message"));
+        assertThat(messages.baz(), is("The Baz Message"));
+        assertThat(messages.defaultMessage(), is("overridden default message"));
+    }
+
+    @Test
+    public void messagesAreResolvedAgainAfterReloadingBundles() {
+        MessagesProvider provider = MessagesProvider.forLocale(Locale.ENGLISH);
+        ReloadableMessages messages = provider.create(ReloadableMessages.class);
+
+        ReloadableMessages_en.contents = new Object[][] { { "greeting", "Hello" } };
+        assertThat(messages.greeting(), is("Hello"));
+        assertThat(messages.farewell(), is("???farewell???"));
+
+        ReloadableMessages_en.contents = new Object[][] { { "greeting", "Hi" }, { "farewell", "Bye" } };
+        assertThat(messages.greeting(), is("Hello"));
+
+        provider.reloadBundles();
+
+        assertThat(messages.greeting(), is("Hi"));
+        assertThat(messages.farewell(), is("Bye"));
+    }
+
+    @Test
+    public void batchesOfMessagesCanBeLookedUpForInterface() {
+        Map<String, String> messages = messagesProvider.getMessages(InheritedTestMessages.class, asList("foo", "bar", "unknown"));
+
+        assertThat(messages.size(), is(2));
+        assertThat(messages.get("foo"), is("The Foo Message"));
+        assertThat(messages.get("bar"), is("The Overridden Bar Message"));
+    }
+
+    @Test
+    public void objectsCanBeCreatedAsynchronously() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertThat(messagesProvider.createAsync(TestMessages.class, executor).get(), is(sameInstance(messages())));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void flattenedProvidersShareTheFormatCache() {
+        messages().messageWithParameters("foo", 1);
+        long misses = messagesProvider.getFormatCacheStatistics().getMissCount();
+
+        messagesProvider.withFlattenedBundles().create(TestMessages.class).messageWithParameters("foo", 1);
+
+        assertThat(messagesProvider.getFormatCacheStatistics().getMissCount(), is(misses));
+    }
+
+    @Test
+    public void createdObjectsAreReused() {
+        assertThat(messagesProvider.create(TestMessages.class), is(sameInstance(messages())));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void methodsWithVoidReturnTypeAreNotAllowed() {
         messagesProvider.create(MessagesWithVoidReturnType.class);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void appendingToArbitraryAppendableRequiresIOException() {
+        messagesProvider.create(MessagesWithUncheckedAppendable.class);
+    }
+
+    @Test
+    public void messagesCanBeAppendedToTargetsGivenAsLastArgument() throws IOException {
+        AppendingMessages messages = messagesProvider.create(AppendingMessages.class);
+
+        StringBuilder sb = new StringBuilder("> ");
+        messages.greet("world", sb);
+        messages.hello(sb);
+        assertThat(sb.toString(), is("> Hello, world!hello"));
+
+        StringWriter writer = new StringWriter();
+        messages.count(42L, writer);
+        assertThat(writer.toString(), is("42 items"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void methodsWithNonStringReturnTypeAreNotAllowed() {
         messagesProvider.create(MessagesWithListReturnType.class);
@@ -111,6 +201,22 @@ public class MessagesProviderTest {
         void foo();
     }
 
+    @SuppressWarnings("unused")
+    interface MessagesWithUncheckedAppendable extends Messages {
+        void foo(Appendable out);
+    }
+
+    interface AppendingMessages extends Messages {
+        @DefaultMessage("Hello, {0}!")
+        void greet(String target, StringBuilder out);
+
+        @DefaultMessage("hello")
+        void hello(StringBuilder out);
+
+        @DefaultMessage("{0} items")
+        void count(long count, Appendable out) throws IOException;
+    }
+
     @SuppressWarnings("unused")
     interface MessagesWithListReturnType extends Messages {
         List<String> foo();
@@ -118,4 +224,23 @@ public class MessagesProviderTest {
 
     interface MessagesWithInheritedInvalidMethods extends MessagesWithListReturnType {
     }
+
+    interface ReloadableMessages extends Messages {
+        String greeting();
+
+        String farewell();
+    }
+
+    /**
+     * Bundle of {@link ReloadableMessages} whose contents are read again when the bundle is reloaded.
+     */
+    public static final class ReloadableMessages_en extends ListResourceBundle {
+
+        static volatile Object[][] contents = new Object[0][];
+
+        @Override
+        protected Object[][] getContents() {
+            return contents;
+        }
+    }
 }
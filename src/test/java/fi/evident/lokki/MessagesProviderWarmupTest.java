@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MessagesProviderWarmupTest {
+
+    private final MessagesProvider messagesProvider = new MessagesProvider(new FixedLocaleProvider(Locale.ENGLISH));
+
+    private final List<Locale> locales = Arrays.asList(Locale.ENGLISH, Locale.GERMAN);
+
+    @Test
+    public void missingMessagesAreReportedForEachLocale() {
+        WarmupReport report = messagesProvider.warmUp(classes(TestMessages.class), locales);
+
+        assertThat(report.isSuccessful(), is(false));
+        assertThat(report.getLocales(), is(locales));
+        assertThat(report.getMissingMessages(), is(Arrays.asList(
+            "fi.evident.lokki.TestMessages: unknown [de]",
+            "fi.evident.lokki.TestMessages: unknown [en]")));
+        assertThat(report.getMalformedPatterns().isEmpty(), is(true));
+    }
+
+    @Test
+    public void malformedPatternsAreReported() {
+        WarmupReport report = messagesProvider.warmUp(classes(MalformedMessages.class), Collections.singletonList(Locale.ENGLISH));
+
+        assertThat(report.getMalformedPatterns().size(), is(1));
+        assertTrue(report.getMalformedPatterns().get(0).startsWith("fi.evident.lokki.MessagesProviderWarmupTest$MalformedMessages: malformed [en]: "));
+    }
+
+    @Test
+    public void warmUpCanBeRunUsingExecutor() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            WarmupReport report = messagesProvider.warmUp(classes(InheritedTestMessages.class, MalformedMessages.class), locales, executor);
+
+            assertThat(report.getMalformedPatterns().size(), is(2));
+            assertTrue(report.getCreationNanos() >= 0);
+            assertTrue(report.getBundleLoadingNanos() >= 0);
+            assertTrue(report.getPatternCompilationNanos() >= 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void warmedUpPatternsAreReused() {
+        messagesProvider.warmUp(classes(TestMessages.class), locales);
+        long misses = messagesProvider.getFormatCacheStatistics().getMissCount();
+
+        messagesProvider.create(TestMessages.class).messageWithParameters("foo", 1);
+
+        assertThat(messagesProvider.getFormatCacheStatistics().getMissCount(), is(misses));
+    }
+
+    @Test
+    public void customSourcesAreWarmedUpOnlyInTheLocaleOfTheProvider() {
+        final LocaleProvider localeProvider = new FixedLocaleProvider(Locale.GERMAN);
+        MessageSource source = new MessageSource() {
+            @Override
+            public String getMessage(String key) {
+                return localeProvider.getLocale().equals(Locale.ENGLISH) && key.equals("greeting") ? "Hello" : null;
+            }
+        };
+
+        WarmupReport report = new MessagesProvider(source, localeProvider).warmUp(classes(GreetingMessages.class), locales);
+
+        assertThat(report.getLocales(), is(Collections.singletonList(Locale.GERMAN)));
+        assertThat(report.getMissingMessages(), is(Collections.singletonList(
+            "fi.evident.lokki.MessagesProviderWarmupTest$GreetingMessages: greeting [de]")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidInterfacesAreRejected() {
+        messagesProvider.warmUp(classes(InvalidMessages.class), locales);
+    }
+
+    private static Collection<Class<? extends Messages>> classes(Class<? extends Messages> messagesClass) {
+        return Collections.<Class<? extends Messages>>singletonList(messagesClass);
+    }
+
+    private static Collection<Class<? extends Messages>> classes(Class<? extends Messages> first, Class<? extends Messages> second) {
+        List<Class<? extends Messages>> classes = new ArrayList<Class<? extends Messages>>(2);
+        classes.add(first);
+        classes.add(second);
+        return classes;
+    }
+
+    interface GreetingMessages extends Messages {
+        String greeting();
+    }
+
+    interface MalformedMessages extends Messages {
+        @DefaultMessage("unmatched {0")
+        String malformed(String arg);
+
+        @DefaultMessage("no arguments {0")
+        String withoutArguments();
+    }
+
+    @SuppressWarnings("unused")
+    interface InvalidMessages extends Messages {
+        int invalid();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class MessagesProviderWithLocaleViewsTest {
+
+    private final FixedLocaleProvider localeProvider = new FixedLocaleProvider(Locale.ENGLISH);
+
+    private final MessagesProvider messagesProvider = new MessagesProvider(localeProvider);
+
+    @Test
+    public void viewsArePinnedToTheirLocale() {
+        TestMessages messages = messagesProvider.create(TestMessages.class, Locale.GERMAN);
+
+        assertThat(messages.foo(), is("Die Foo Lokalisierung Nachricht"));
+        assertThat(messages.messageWithParameters("foo", 1234), is("str: foo, x: 1.234"));
+
+        localeProvider.setLocale(new Locale("fi"));
+        assertThat(messages.foo(), is("Die Foo Lokalisierung Nachricht"));
+    }
+
+    @Test
+    public void viewsDoNotAffectTheProvider() {
+        messagesProvider.create(TestMessages.class, Locale.GERMAN);
+
+        assertThat(messagesProvider.create(TestMessages.class).foo(), is("The Foo Message"));
+    }
+
+    @Test
+    public void viewsAndTheirObjectsAreCached() {
+        assertThat(messagesProvider.withLocale(Locale.GERMAN), is(sameInstance(messagesProvider.withLocale(Locale.GERMAN))));
+        assertThat(messagesProvider.create(TestMessages.class, Locale.GERMAN),
+                   is(sameInstance(messagesProvider.create(TestMessages.class, Locale.GERMAN))));
+    }
+
+    @Test
+    public void numberOfCachedViewsIsBounded() {
+        MessagesProvider first = messagesProvider.withLocale(new Locale("x0"));
+        for (int i = 1; i <= MessagesProvider.MAX_CACHED_VIEWS; i++)
+            messagesProvider.withLocale(new Locale("x" + i));
+
+        assertThat(messagesProvider.getCachedViewCount() <= MessagesProvider.MAX_CACHED_VIEWS, is(true));
+        assertThat(messagesProvider.withLocale(new Locale("x0")), is(not(sameInstance(first))));
+    }
+
+    @Test
+    public void argumentsOfCustomSourcesAreFormattedUsingLocaleOfView() {
+        MessagesProvider provider = new MessagesProvider(new MessageSource() {
+            @Override
+            public String getMessage(@Nonnull String key) {
+                return "x: {1}";
+            }
+        }, localeProvider);
+
+        TestMessages messages = provider.create(TestMessages.class, Locale.GERMAN);
+
+        assertThat(messages.messageWithParameters("foo", 1234), is("x: 1.234"));
+    }
+}
@@ -29,6 +29,7 @@ import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -70,6 +71,16 @@ public class MessagesProviderWithMessageSourceTest {
         assertThat(messages().messageWithParameters("foo", 42), is("str: foo, x: 42"));
     }
 
+    @Test
+    public void batchesOfMessagesAreLookedUpFromCustomSource() {
+        messageSource.setMessage("foo", "My message");
+
+        Map<String, String> messages = messagesProvider.getMessages(TestMessages.class, asList("foo", "unknown"));
+
+        assertThat(messages.size(), is(1));
+        assertThat(messages.get("foo"), is("My message"));
+    }
+
     private TestMessages messages() {
         return messagesProvider.create(TestMessages.class);
     }
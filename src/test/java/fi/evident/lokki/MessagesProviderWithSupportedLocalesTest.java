@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MessagesProviderWithSupportedLocalesTest {
+
+    private final FixedLocaleProvider localeProvider = new FixedLocaleProvider(Locale.ENGLISH);
+
+    private final MessagesProvider messagesProvider =
+        MessagesProvider.forSupportedLocales(localeProvider, asList(Locale.ENGLISH, Locale.GERMAN, new Locale("fi")), Locale.ENGLISH);
+
+    @Test
+    public void messagesAreResolvedForCurrentLocale() {
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+        assertThat(messages.foo(), is("The Foo Message"));
+
+        localeProvider.setLocale(Locale.GERMAN);
+        assertThat(messages.foo(), is("Die Foo Lokalisierung Nachricht"));
+
+        localeProvider.setLocale(new Locale("fi", "FI"));
+        assertThat(messages.foo(), is("Foo-viesti"));
+    }
+
+    @Test
+    public void unsupportedLocalesUseFallbackLocale() {
+        localeProvider.setLocale(Locale.JAPANESE);
+
+        assertThat(messagesProvider.create(TestMessages.class).foo(), is("The Foo Message"));
+    }
+
+    @Test
+    public void defaultMessagesAndMissingMessagesAreHandled() {
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+
+        assertThat(messages.defaultMessage(), is("my default message"));
+        assertThat(messages.unknown(), is("???unknown???"));
+    }
+
+    @Test
+    public void argumentsAreFormattedUsingTheSupportedLocale() {
+        localeProvider.setLocale(Locale.GERMANY);
+
+        assertThat(messagesProvider.create(TestMessages.class).messageWithParameters("foo", 1234), is("str: foo, x: 1.234"));
+    }
+
+    @Test
+    public void inheritedMessagesAreResolved() {
+        InheritedTestMessages messages = messagesProvider.create(InheritedTestMessages.class);
+
+        assertThat(messages.bar(), is("The Overridden Bar Message"));
+        assertThat(messages.foo(), is("The Foo Message"));
+    }
+}
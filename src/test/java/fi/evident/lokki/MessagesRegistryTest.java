@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import fi.evident.lokki.scan.ScannedMessages;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class MessagesRegistryTest {
+
+    private final MessagesProvider messagesProvider = MessagesProvider.forLocale(Locale.ENGLISH);
+
+    @Test
+    public void messagesInterfacesAreFoundFromPackages() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            MessagesRegistry registry = messagesProvider.createAll(getClass().getClassLoader(), Collections.singletonList("fi.evident.lokki.scan"), executor);
+
+            assertThat(registry.size(), is(3));
+            assertThat(registry.get(ScannedMessages.class).scanned(), is("scanned"));
+            assertThat(registry.get(ScannedMessages.NestedMessages.class).nested(), is("nested"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void registryContainsTheSameObjectsAsProvider() throws InterruptedException {
+        MessagesRegistry registry = messagesProvider.createAll(Arrays.asList(TestMessages.class, InheritedTestMessages.class), null);
+
+        assertThat(registry.get(TestMessages.class), is(sameInstance(messagesProvider.create(TestMessages.class))));
+        assertThat(registry.get(InheritedTestMessages.class).baz(), is("The Baz Message"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownInterfacesAreRejected() throws InterruptedException {
+        MessagesRegistry registry = messagesProvider.createAll(Collections.singletonList(TestMessages.class), null);
+
+        registry.get(InheritedTestMessages.class);
+    }
+}
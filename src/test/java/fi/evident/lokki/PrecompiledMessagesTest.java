@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class PrecompiledMessagesTest {
+
+    private final MessagesProvider messagesProvider = MessagesProvider.forLocale(Locale.ENGLISH);
+
+    @Test
+    public void generatedImplementationIsUsedWhenPresent() {
+        PrecompiledTestMessages messages = messagesProvider.create(PrecompiledTestMessages.class);
+
+        assertThat(messages, is(instanceOf(PrecompiledTestMessages_Lokki.class)));
+        assertThat(messages.fooMessage(), is("The Foo Message"));
+        assertThat(messages.hello("world"), is("Hello, world!"));
+    }
+
+    @Test
+    public void nameOfImplementationIsDerivedFromBinaryName() {
+        assertThat(PrecompiledMessages.implementationClassName(TestMessages.class), is("fi.evident.lokki.TestMessages_Lokki"));
+        assertThat(PrecompiledMessages.implementationClassName(NestedMessages.class), is("fi.evident.lokki.PrecompiledMessagesTest_NestedMessages_Lokki"));
+    }
+
+    @Test
+    public void classesNotImplementingTheInterfaceAreIgnored() {
+        ShadowedMessages messages = messagesProvider.create(ShadowedMessages.class);
+
+        assertThat(messages, is(not(instanceOf(PrecompiledMessagesTest_ShadowedMessages_Lokki.class))));
+        assertThat(messages.hello(), is("hello"));
+    }
+
+    interface NestedMessages extends Messages {
+    }
+
+    public interface ShadowedMessages extends Messages {
+        @DefaultMessage("hello")
+        String hello();
+    }
+}
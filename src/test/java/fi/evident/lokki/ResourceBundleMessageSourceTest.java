@@ -25,6 +25,7 @@ package fi.evident.lokki;
 import org.junit.Test;
 
 import java.util.Locale;
+import java.util.Map;
 
 import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
@@ -53,4 +54,136 @@ public class ResourceBundleMessageSourceTest {
     public void nullIsReturnedIfMessageIsNotFound() {
         assertThat(messageSource.getMessage("unknown"), is(nullValue()));
     }
+
+    @Test
+    public void bundlesAreSearchedInOrder() {
+        ResourceBundleMessageSource source = new ResourceBundleMessageSource(
+            asList(InheritedTestMessages.class.getName(), TestMessages.class.getName()), localeProvider);
+
+        assertThat(source.getMessage("bar"), is("The Overridden Bar Message"));
+        assertThat(source.getMessage("foo"), is("The Foo Message"));
+    }
+
+    @Test
+    public void missingBundlesAreSkipped() {
+        ResourceBundleMessageSource source = new ResourceBundleMessageSource(
+            asList("fi.evident.lokki.NonExistentMessages", TestMessages.class.getName()), localeProvider);
+
+        assertThat(source.getMessage("foo"), is("The Foo Message"));
+        assertThat(source.getMessage("unknown"), is(nullValue()));
+    }
+
+    @Test
+    public void bundlesAreResolvedSeparatelyForEachLocale() {
+        assertThat(messageSource.getMessage("foo"), is("The Foo Message"));
+
+        localeProvider.setLocale(Locale.GERMAN);
+        assertThat(messageSource.getMessage("foo"), is("Die Foo Lokalisierung Nachricht"));
+    }
+
+    @Test
+    public void flattenedBundlesLetChildrenOverrideParents() {
+        ResourceBundleMessageSource source = new ResourceBundleMessageSource(
+            asList(InheritedTestMessages.class.getName(), TestMessages.class.getName()), localeProvider, true);
+
+        assertThat(source.getMessage("bar"), is("The Overridden Bar Message"));
+        assertThat(source.getMessage("baz"), is("The Baz Message"));
+        assertThat(source.getMessage("foo"), is("The Foo Message"));
+        assertThat(source.getMessage("unknown"), is(nullValue()));
+    }
+
+    @Test
+    public void flattenedBundlesIncludeLocaleSpecificMessages() {
+        ResourceBundleMessageSource source = new ResourceBundleMessageSource(
+            asList(InheritedTestMessages.class.getName(), TestMessages.class.getName()), localeProvider, true);
+
+        localeProvider.setLocale(Locale.GERMAN);
+        assertThat(source.getMessage("foo"), is("Die Foo Lokalisierung Nachricht"));
+        assertThat(source.getMessage("baz"), is("The Baz Message"));
+    }
+
+    @Test
+    public void missingKeysAreCachedPerLocale() {
+        assertThat(messageSource.getMessage("unknown"), is(nullValue()));
+        assertThat(messageSource.getMessage("unknown"), is(nullValue()));
+        assertThat(messageSource.getMissingKeyCount(), is(1));
+
+        localeProvider.setLocale(Locale.GERMAN);
+        assertThat(messageSource.getMessage("unknown"), is(nullValue()));
+        assertThat(messageSource.getMissingKeyCount(), is(2));
+    }
+
+    @Test
+    public void foundKeysAreNotCachedAsMissing() {
+        assertThat(messageSource.getMessage("foo"), is("The Foo Message"));
+        assertThat(messageSource.getMissingKeyCount(), is(0));
+    }
+
+    @Test
+    public void numberOfCachedMissingKeysIsBounded() {
+        ResourceBundleMessageSource source = new ResourceBundleMessageSource(
+            asList(TestMessages.class.getName()), localeProvider, false, 2);
+
+        assertThat(source.getMessage("unknown1"), is(nullValue()));
+        assertThat(source.getMessage("unknown2"), is(nullValue()));
+        assertThat(source.getMissingKeyCount(), is(2));
+
+        // A full locale is cleared to make room for new keys
+        assertThat(source.getMessage("unknown3"), is(nullValue()));
+        assertThat(source.getMissingKeyCount(), is(1));
+        assertThat(source.getMessage("unknown3"), is(nullValue()));
+        assertThat(source.getMissingKeyCount(), is(1));
+        assertThat(source.getMessage("foo"), is("The Foo Message"));
+    }
+
+    @Test
+    public void missingKeysAreBoundedPerLocale() {
+        ResourceBundleMessageSource source = new ResourceBundleMessageSource(
+            asList(TestMessages.class.getName()), localeProvider, false, 2);
+
+        assertThat(source.getMessage("unknown1"), is(nullValue()));
+        assertThat(source.getMessage("unknown2"), is(nullValue()));
+
+        localeProvider.setLocale(Locale.GERMAN);
+        assertThat(source.getMessage("unknown1"), is(nullValue()));
+        assertThat(source.getMessage("unknown2"), is(nullValue()));
+
+        assertThat(source.getMissingKeyCount(), is(4));
+    }
+
+    @Test
+    public void reloadDiscardsMissingKeys() {
+        assertThat(messageSource.getMessage("unknown"), is(nullValue()));
+
+        messageSource.reload();
+
+        assertThat(messageSource.getMissingKeyCount(), is(0));
+        assertThat(messageSource.getMessage("foo"), is("The Foo Message"));
+        assertThat(messageSource.getMessage("unknown"), is(nullValue()));
+    }
+
+    @Test
+    public void batchesOfMessagesAreSearchedFromBundlesInOrder() {
+        ResourceBundleMessageSource source = new ResourceBundleMessageSource(
+            asList(InheritedTestMessages.class.getName(), TestMessages.class.getName()), localeProvider);
+
+        Map<String, String> messages = source.getMessages(asList("foo", "bar", "unknown"));
+
+        assertThat(messages.size(), is(2));
+        assertThat(messages.get("foo"), is("The Foo Message"));
+        assertThat(messages.get("bar"), is("The Overridden Bar Message"));
+        assertThat(source.getMissingKeyCount(), is(1));
+    }
+
+    @Test
+    public void batchesOfMessagesCanBeLookedUpFromFlattenedBundles() {
+        ResourceBundleMessageSource source = new ResourceBundleMessageSource(
+            asList(InheritedTestMessages.class.getName(), TestMessages.class.getName()), localeProvider, true);
+
+        Map<String, String> messages = source.getMessages(asList("foo", "bar", "unknown"), Locale.GERMAN);
+
+        assertThat(messages.size(), is(2));
+        assertThat(messages.get("foo"), is("Die Foo Lokalisierung Nachricht"));
+        assertThat(messages.get("bar"), is("The Overridden Bar Message"));
+    }
 }
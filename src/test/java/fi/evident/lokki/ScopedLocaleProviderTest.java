@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ScopedLocaleProviderTest {
+
+    private final ScopedLocaleProvider localeProvider = new ScopedLocaleProvider(new FixedLocaleProvider(Locale.ENGLISH));
+
+    @Test
+    public void fallbackProviderIsUsedOutsideScopes() {
+        assertThat(localeProvider.getLocale(), is(Locale.ENGLISH));
+    }
+
+    @Test
+    public void localeIsBoundForDurationOfTask() throws Exception {
+        Locale locale = localeProvider.call(Locale.GERMAN, new Callable<Locale>() {
+            @Override
+            public Locale call() {
+                return localeProvider.getLocale();
+            }
+        });
+
+        assertThat(locale, is(Locale.GERMAN));
+        assertThat(localeProvider.getLocale(), is(Locale.ENGLISH));
+    }
+
+    @Test
+    public void nestedBindingsAreRestored() {
+        localeProvider.run(Locale.GERMAN, new Runnable() {
+            @Override
+            public void run() {
+                localeProvider.run(Locale.FRENCH, new Runnable() {
+                    @Override
+                    public void run() {
+                        assertThat(localeProvider.getLocale(), is(Locale.FRENCH));
+                    }
+                });
+                assertThat(localeProvider.getLocale(), is(Locale.GERMAN));
+            }
+        });
+    }
+
+    @Test
+    public void bindingIsRestoredIfTaskFails() {
+        try {
+            localeProvider.run(Locale.GERMAN, new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException();
+                }
+            });
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            assertThat(localeProvider.getLocale(), is(Locale.ENGLISH));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class StripedCountersTest {
+
+    @Test
+    public void stripeCountIsPowerOfTwoCoveringProcessors() {
+        assertThat(StripedCounters.stripeCount(1), is(1));
+        assertThat(StripedCounters.stripeCount(3), is(4));
+        assertThat(StripedCounters.stripeCount(8), is(8));
+        assertThat(StripedCounters.stripeCount(64), is(16));
+    }
+
+    @Test
+    public void countersAreIndependent() {
+        StripedCounters counters = new StripedCounters(2);
+
+        counters.increment(0);
+        counters.add(1, 5);
+        counters.add(1, 2);
+
+        assertThat(counters.sum(0), is(1L));
+        assertThat(counters.sum(1), is(7L));
+    }
+
+    @Test
+    public void uncontendedCountersUseASingleCellEach() {
+        StripedCounters counters = new StripedCounters(5);
+
+        for (int i = 0; i < 1000; i++)
+            counters.increment(i % 5);
+
+        assertThat(counters.cellCount(), is(5));
+        assertThat(counters.sum(4), is(200L));
+    }
+
+    @Test
+    public void contendedCountersStayBoundedAndAccurate() throws InterruptedException {
+        final StripedCounters counters = new StripedCounters(1);
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++)
+                        counters.increment(0);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(counters.sum(0), is(400000L));
+        assertTrue(counters.cellCount() <= 1 + 16 * 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void numberOfCountersIsLimitedToStripeSize() {
+        new StripedCounters(9);
+    }
+}
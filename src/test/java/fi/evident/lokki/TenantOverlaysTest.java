@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TenantOverlaysTest {
+
+    private static final Locale FINNISH = new Locale("fi");
+
+    private final MutableTenantProvider tenantProvider = new MutableTenantProvider();
+
+    private final TenantOverlays overlays = new TenantOverlays(tenantProvider);
+
+    private final MessagesProvider messagesProvider = MessagesProvider.forLocale(Locale.ENGLISH).withTenantOverlays(overlays);
+
+    @Test
+    public void tenantsSeeTheirOwnOverrides() {
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ENGLISH, "Acme Foo");
+        overlays.setMessage("globex", TestMessages.class, "foo", Locale.ENGLISH, "Globex Foo");
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+
+        tenantProvider.tenant = "acme";
+        assertThat(messages.foo(), is("Acme Foo"));
+
+        tenantProvider.tenant = "globex";
+        assertThat(messages.foo(), is("Globex Foo"));
+    }
+
+    @Test
+    public void messagesWhichAreNotOverriddenAreShared() {
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ENGLISH, "Acme Foo");
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+
+        tenantProvider.tenant = "acme";
+        assertThat(messages.messageWithKey(), is("The Bar Message"));
+        assertThat(messages.defaultMessage(), is("my default message"));
+
+        tenantProvider.tenant = "initech";
+        assertThat(messages.foo(), is("The Foo Message"));
+
+        tenantProvider.tenant = null;
+        assertThat(messages.foo(), is("The Foo Message"));
+    }
+
+    @Test
+    public void overridesTakePrecedenceOverDefaultMessagesAndAreFormatted() {
+        overlays.setMessage("acme", TestMessages.class, "messageWithParameters", Locale.ROOT, "{1} x {0}");
+        overlays.setMessage("acme", TestMessages.class, "unknown", Locale.ROOT, "known to Acme");
+        tenantProvider.tenant = "acme";
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+
+        assertThat(messages.messageWithParameters("foo", 42), is("42 x foo"));
+        assertThat(messages.unknown(), is("known to Acme"));
+    }
+
+    @Test
+    public void overridesForSpecificLocalePrecedeOverridesForAllLocales() {
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ROOT, "Acme Foo");
+        overlays.setMessage("acme", TestMessages.class, "foo", FINNISH, "Acme Foo in Finnish");
+        tenantProvider.tenant = "acme";
+
+        assertThat(messagesProvider.create(TestMessages.class).foo(), is("Acme Foo"));
+        assertThat(messagesProvider.create(TestMessages.class, FINNISH).foo(), is("Acme Foo in Finnish"));
+    }
+
+    @Test
+    public void overridesApplyToRegionalVariantsOfTheirLocale() {
+        Locale finland = new Locale("fi", "FI");
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ROOT, "Acme Foo");
+        overlays.setMessage("acme", TestMessages.class, "foo", FINNISH, "Acme Foo in Finnish");
+        overlays.setMessage("acme", TestMessages.class, "bar", Locale.ROOT, "Acme Bar");
+        tenantProvider.tenant = "acme";
+
+        TestMessages messages = messagesProvider.create(TestMessages.class, finland);
+        assertThat(messages.foo(), is("Acme Foo in Finnish"));
+        assertThat(messages.messageWithKey(), is("Acme Bar"));
+
+        overlays.setMessage("acme", TestMessages.class, "foo", finland, "Acme Foo in Finland");
+        assertThat(messages.foo(), is("Acme Foo in Finland"));
+    }
+
+    @Test
+    public void overridesApplyOnlyToTheirInterface() {
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ROOT, "Acme Foo");
+        tenantProvider.tenant = "acme";
+
+        assertThat(messagesProvider.create(InheritedTestMessages.class).foo(), is("The Foo Message"));
+    }
+
+    @Test
+    public void overridesApplyToProvidersForSupportedLocales() {
+        MessagesProvider provider = MessagesProvider.forSupportedLocales(new FixedLocaleProvider(new Locale("fi", "FI")),
+                                                                         Arrays.asList(Locale.ENGLISH, FINNISH), Locale.ENGLISH);
+        overlays.setMessage("acme", TestMessages.class, "foo", FINNISH, "Acme Foo");
+        TestMessages messages = provider.withTenantOverlays(overlays).create(TestMessages.class);
+
+        assertThat(messages.foo(), is("Foo-viesti"));
+        tenantProvider.tenant = "acme";
+        assertThat(messages.foo(), is("Acme Foo"));
+    }
+
+    @Test
+    public void changesAreVisibleImmediately() {
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+        tenantProvider.tenant = "acme";
+        assertThat(messages.foo(), is("The Foo Message"));
+
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ENGLISH, "Acme Foo");
+        assertThat(messages.foo(), is("Acme Foo"));
+
+        overlays.removeMessage("acme", TestMessages.class, "foo", Locale.ENGLISH);
+        assertThat(messages.foo(), is("The Foo Message"));
+    }
+
+    @Test
+    public void overridesAreCounted() {
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ENGLISH, "Acme Foo");
+        overlays.setMessage("acme", TestMessages.class, "foo", FINNISH, "Acme Foo");
+        overlays.setMessage("acme", TestMessages.class, "foo", FINNISH, "Acme Foo again");
+        overlays.setMessage("globex", TestMessages.class, "bar", Locale.ROOT, "Globex Bar");
+        assertThat(overlays.getOverrideCount(), is(3));
+
+        overlays.removeMessage("acme", TestMessages.class, "foo", FINNISH);
+        overlays.removeMessage("acme", TestMessages.class, "unknown", FINNISH);
+        assertThat(overlays.getOverrideCount(), is(2));
+
+        overlays.removeTenant("globex");
+        assertThat(overlays.getOverrideCount(), is(1));
+    }
+
+    @Test
+    public void batchesIncludeOverridesOfCurrentTenant() {
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ROOT, "Acme Foo");
+        overlays.setMessage("acme", TestMessages.class, "unknown", Locale.ENGLISH, "Acme Unknown");
+
+        Map<String, String> messages = messagesProvider.getMessages(TestMessages.class, Arrays.asList("foo", "bar", "unknown"));
+        assertThat(messages.get("foo"), is("The Foo Message"));
+        assertThat(messages.containsKey("unknown"), is(false));
+
+        tenantProvider.tenant = "acme";
+        messages = messagesProvider.getMessages(TestMessages.class, Arrays.asList("foo", "bar", "unknown"));
+        assertThat(messages.get("foo"), is("Acme Foo"));
+        assertThat(messages.get("bar"), is("The Bar Message"));
+        assertThat(messages.get("unknown"), is("Acme Unknown"));
+    }
+
+    @Test
+    public void exportedMessagesIncludeOverridesOfCurrentTenant() throws IOException {
+        overlays.setMessage("acme", TestMessages.class, "foo", Locale.ROOT, "Acme Foo");
+        tenantProvider.tenant = "acme";
+
+        StringWriter writer = new StringWriter();
+        messagesProvider.exportMessages(TestMessages.class, Locale.ENGLISH, writer);
+
+        assertThat(writer.toString().contains("\"foo\":\"Acme Foo\""), is(true));
+    }
+
+    private static final class MutableTenantProvider implements TenantProvider {
+
+        @Nullable
+        private String tenant;
+
+        @Nullable
+        @Override
+        public String getTenant() {
+            return tenant;
+        }
+    }
+}
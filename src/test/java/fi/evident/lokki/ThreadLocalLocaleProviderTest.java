@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2011 Evident Solutions Oy
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.evident.lokki;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ThreadLocalLocaleProviderTest {
+
+    private final ThreadLocalLocaleProvider localeProvider = new ThreadLocalLocaleProvider(new FixedLocaleProvider(Locale.ENGLISH));
+
+    @Test
+    public void fallbackProviderIsUsedIfLocaleIsNotSet() {
+        assertThat(localeProvider.getLocale(), is(Locale.ENGLISH));
+    }
+
+    @Test
+    public void localeIsSpecificToThread() throws InterruptedException {
+        localeProvider.setLocale(Locale.GERMAN);
+        try {
+            final AtomicReference<Locale> otherLocale = new AtomicReference<Locale>();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    otherLocale.set(localeProvider.getLocale());
+                }
+            });
+            thread.start();
+            thread.join();
+
+            assertThat(localeProvider.getLocale(), is(Locale.GERMAN));
+            assertThat(otherLocale.get(), is(Locale.ENGLISH));
+        } finally {
+            localeProvider.remove();
+        }
+
+        assertThat(localeProvider.getLocale(), is(Locale.ENGLISH));
+    }
+
+    @Test
+    public void sameMessagesObjectIsUsedWithDifferentLocales() {
+        MessagesProvider messagesProvider = new MessagesProvider(localeProvider);
+        TestMessages messages = messagesProvider.create(TestMessages.class);
+
+        try {
+            assertThat(messages.foo(), is("The Foo Message"));
+
+            localeProvider.setLocale(Locale.GERMAN);
+            assertThat(messages.foo(), is("Die Foo Lokalisierung Nachricht"));
+            assertThat(messagesProvider.create(TestMessages.class) == messages, is(true));
+        } finally {
+            localeProvider.remove();
+        }
+    }
+}